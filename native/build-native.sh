@@ -0,0 +1,38 @@
+#!/bin/sh
+# Builds the headless client as JVM jar and as GraalVM native image (Linux).
+# Needs JAVA_HOME pointing to a GraalVM with native-image for the second step.
+# Reflection, resource and security configuration is read from META-INF/native-image on the classpath,
+# as traced by native-image-agent in native/startup-bench.sh; there is no hand-written configuration.
+#
+# usage: native/build-native.sh [--jar-only]
+set -e
+
+cd "$(dirname "$0")/.."
+OUT=build
+rm -rf "$OUT/classes"
+mkdir -p "$OUT/classes"
+
+# the headless client does not reference GUI, SystemTrayMenu or BTClient
+javac -d "$OUT/classes" $(find src/main/java -name '*.java' ! -name 'GUI.java' ! -name 'SystemTrayMenu.java' ! -name 'BTClient.java')
+cp -r src/main/resources/. "$OUT/classes/"
+
+jar cfe "$OUT/proximity-client-headless.jar" HeadlessClient -C "$OUT/classes" .
+echo "built $OUT/proximity-client-headless.jar"
+
+# simulation and stand-in daemon, used by startup-bench.sh but not shipped
+rm -rf "$OUT/test-classes"
+mkdir -p "$OUT/test-classes"
+javac -cp "$OUT/classes" -d "$OUT/test-classes" src/test/java/*.java
+
+[ "$1" = "--jar-only" ] && exit 0
+
+NATIVE_IMAGE="${JAVA_HOME:+$JAVA_HOME/bin/}native-image"
+if ! command -v "$NATIVE_IMAGE" >/dev/null 2>&1; then
+    echo "native-image not found, skipping native build" >&2
+    exit 0
+fi
+if [ -z "$(find src/main/resources/META-INF/native-image -name '*.json')" ]; then
+    echo "no traced configuration in src/main/resources/META-INF/native-image, run native/startup-bench.sh" >&2
+fi
+"$NATIVE_IMAGE" -cp "$OUT/classes" -o "$OUT/proximity-client" HeadlessClient
+echo "built $OUT/proximity-client"
@@ -0,0 +1,84 @@
+#!/bin/sh
+# Compares time-to-first-check and peak RSS of the headless client on the JVM and as native image.
+# Starts a StandInDaemon on localhost, runs each variant with --once a few times and prints
+# the wall time per run together with what the client reports itself.
+# With a GraalVM as JAVA_HOME the client is first traced by native-image-agent - one --once run and one full
+# run with discovery and presence server - into src/main/resources/META-INF/native-image, where native-image
+# picks the configuration up from the classpath. The image is rebuilt from it before the comparison; commit the
+# traced files together with the printed numbers.
+#
+# usage: native/startup-bench.sh [runs]
+set -e
+
+cd "$(dirname "$0")/.."
+RUNS=${1:-5}
+OUT=build
+WORK="$OUT/bench"
+PORT=14567
+NATIVE_CONFIG=src/main/resources/META-INF/native-image/ba-2fa-windows-client
+
+native/build-native.sh --jar-only
+rm -rf "$WORK"
+mkdir -p "$WORK"
+
+keytool -genkeypair -alias daemon -keyalg RSA -dname CN=localhost -ext SAN=dns:localhost,ip:127.0.0.1 \
+    -storetype PKCS12 -keystore "$WORK/daemon.p12" -storepass secret -validity 2 >/dev/null 2>&1
+keytool -exportcert -rfc -alias daemon -keystore "$WORK/daemon.p12" -storepass secret \
+    -file "$WORK/daemon.pem" >/dev/null 2>&1
+
+cat > "$WORK/config" <<CONF
+ip=localhost
+port=$PORT
+timeInterval=15
+pemLocation=$WORK/daemon.pem
+level=1
+hmac=-1
+discovery=false
+presencePort=0
+CONF
+sed -e 's/^discovery=.*/discovery=true/' -e "s/^presencePort=.*/presencePort=$((PORT + 1))/" \
+    "$WORK/config" > "$WORK/config-full"
+
+java -cp "$OUT/classes:$OUT/test-classes" StandInDaemon "$WORK/daemon.p12" secret $PORT true >/dev/null &
+DAEMON=$!
+trap 'kill $DAEMON 2>/dev/null' EXIT
+sleep 2
+
+JAVA="${JAVA_HOME:+$JAVA_HOME/bin/}java"
+NATIVE_IMAGE="${JAVA_HOME:+$JAVA_HOME/bin/}native-image"
+if command -v "$NATIVE_IMAGE" >/dev/null 2>&1; then
+    "$NATIVE_IMAGE" --version | head -1
+    find "$NATIVE_CONFIG" -name '*.json' -delete
+    AGENT="-agentlib:native-image-agent=config-merge-dir=$NATIVE_CONFIG"
+    "$JAVA" "$AGENT" -jar "$OUT/proximity-client-headless.jar" --config "$WORK/config" --once
+    # the full client until SIGTERM, with one presence request and the daemon's announcements
+    "$JAVA" "$AGENT" -jar "$OUT/proximity-client-headless.jar" --config "$WORK/config-full" &
+    CLIENT=$!
+    sleep 8
+    curl -s "http://127.0.0.1:$((PORT + 1))/presence" >/dev/null || true
+    kill -TERM $CLIENT
+    wait $CLIENT || true
+    echo "traced configuration in $NATIVE_CONFIG:"
+    ls "$NATIVE_CONFIG"
+    native/build-native.sh
+fi
+
+bench() {
+    name=$1
+    shift
+    i=1
+    while [ $i -le "$RUNS" ]; do
+        start=$(date +%s%N)
+        report=$("$@" --config "$WORK/config" --once)
+        end=$(date +%s%N)
+        echo "$name run $i: wall $(( (end - start) / 1000000 )) ms, $report"
+        i=$((i + 1))
+    done
+}
+
+bench jvm "$JAVA" -jar "$OUT/proximity-client-headless.jar"
+if [ -x "$OUT/proximity-client" ]; then
+    bench native "$OUT/proximity-client"
+else
+    echo "no native image at $OUT/proximity-client, run again with a GraalVM as JAVA_HOME" >&2
+fi
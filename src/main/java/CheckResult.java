@@ -0,0 +1,47 @@
+/**
+ * Outcome of one check against a daemon.
+ */
+public class CheckResult {
+
+    public enum Status {
+        PRESENT,        // foundBT: true
+        ABSENT,         // foundBT with any other value
+        NO_ANSWER,      // no connection could be set up or no foundBT header was sent
+        UNREACHABLE,    // connecting failed, another endpoint may be tried
+        INVALID_KEY,    // the daemon certificate does not match the pinned key
+        FAILED,         // any other TLS / certificate error
+        BUSY            // daemon answered 429 / 503, nothing was checked
+    }
+
+    private final Status mStatus;
+    private final long mNextPollMillis;
+
+    public CheckResult(Status _status) {
+        this(_status, -1);
+    }
+
+    /**
+     * @param _nextPollMillis delay the daemon asked for until the next check, -1 if it sent no hint
+     */
+    public CheckResult(Status _status, long _nextPollMillis) {
+        mStatus = _status;
+        mNextPollMillis = _nextPollMillis;
+    }
+
+    public Status getStatus() {
+        return mStatus;
+    }
+
+    public long getNextPollMillis() {
+        return mNextPollMillis;
+    }
+
+    public boolean hasNextPollHint() {
+        return mNextPollMillis >= 0;
+    }
+
+    @Override
+    public String toString() {
+        return getStatus().toString();
+    }
+}
@@ -0,0 +1,9 @@
+/**
+ * Source of time for the polling logic, so it can be driven by a virtual clock in simulations.
+ */
+public interface Clock {
+
+    long currentTimeMillis();
+
+    void sleep(long _millis) throws InterruptedException;
+}
@@ -0,0 +1,396 @@
+import java.io.IOException;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Listens for UDP multicast announcements of proximity daemons and keeps a table of live endpoints.
+ * <p>
+ * An announcement is a single datagram "BTPROXIMITY 1 &lt;port&gt; &lt;sha-256 of the daemon certificate&gt;".
+ * Only daemons announcing the fingerprint of the pinned PEM are taken into the table. As the fingerprint is
+ * public, a new entry stays unverified until an {@link EndpointVerifier} saw the pinned certificate itself;
+ * only verified entries are live, count towards the table size and are used for failover. An entry that
+ * fails is unverified again until the next successful verification.
+ */
+public class DaemonDiscovery implements Runnable {
+
+    public static final String MULTICAST_GROUP = "239.255.42.99";
+    public static final int MULTICAST_PORT = 4568;
+    public static final String ANNOUNCE_PREFIX = "BTPROXIMITY";
+    public static final String ANNOUNCE_VERSION = "1";
+
+    // daemons announce every 5 seconds, three missed announcements mark them as gone
+    public static final long ANNOUNCE_INTERVAL_MILLIS = 5000;
+    private static final long ENDPOINT_TTL_MILLIS = 3 * ANNOUNCE_INTERVAL_MILLIS;
+    private static final int MAX_DISCOVERED_ENDPOINTS = 8;
+    // the fingerprint is public, so anybody on the LAN can announce - unverified entries are kept apart,
+    // one that is not being verified makes room for a new one
+    private static final int MAX_UNVERIFIED_ENDPOINTS = 16;
+    // a single host announcing many ports only gets a few of them checked at a time
+    private static final int MAX_UNVERIFIED_PER_HOST = 2;
+    // an endpoint is verified at most once within this time
+    private static final long REVERIFY_MILLIS = ENDPOINT_TTL_MILLIS;
+
+    private final Map<String, DaemonEndpoint> mEndpoints = new ConcurrentHashMap<>();
+    private final Set<String> mVerifying = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final Clock mClock;
+    private final EndpointVerifier mVerifier;
+    private final ThreadPoolExecutor mVerifierExecutor;
+
+    private volatile X509Certificate mPinnedCertificate;
+    private volatile String mPinnedFingerprint;
+    private volatile boolean mRunning;
+    private MulticastSocket mSocket;
+    private Thread mThread;
+
+    public DaemonDiscovery() {
+        this(new SystemClock());
+    }
+
+    public DaemonDiscovery(Clock _clock) {
+        this(_clock, new TlsEndpointVerifier());
+    }
+
+    public DaemonDiscovery(Clock _clock, EndpointVerifier _verifier) {
+        mClock = _clock;
+        mVerifier = _verifier;
+        // handshakes run apart from the receiving thread, one at a time
+        mVerifierExecutor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(MAX_UNVERIFIED_ENDPOINTS), new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "daemon-verifier");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        mVerifierExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    public synchronized void start() {
+        if (isRunning()) {
+            return;
+        }
+        try {
+            InetAddress group = InetAddress.getByName(MULTICAST_GROUP);
+            MulticastSocket socket = new MulticastSocket(MULTICAST_PORT);
+            if (joinGroup(socket, group) == 0) {
+                Log.error("discovery.start", "could not join " + MULTICAST_GROUP + " on any interface");
+                socket.close();
+                return;
+            }
+            mSocket = socket;
+            mRunning = true;
+
+            mThread = new Thread(this, "daemon-discovery");
+            mThread.setDaemon(true);
+            mThread.start();
+        } catch (IOException e) {
+            Log.error("discovery.start", e.getMessage(), e);
+        }
+    }
+
+    public synchronized void stop() {
+        mRunning = false;
+        if (mSocket != null) {
+            mSocket.close();
+            mSocket = null;
+        }
+        mThread = null;
+    }
+
+    // join on every multicast capable interface, the loopback one included so a local stand-in daemon is found
+    private int joinGroup(MulticastSocket _socket, InetAddress _group) throws SocketException {
+        int joined = 0;
+        Enumeration<NetworkInterface> interfaces = NetworkInterface.getNetworkInterfaces();
+        while (interfaces != null && interfaces.hasMoreElements()) {
+            NetworkInterface ni = interfaces.nextElement();
+            if (!ni.isUp() || !(ni.supportsMulticast() || ni.isLoopback())) {
+                continue;
+            }
+            try {
+                _socket.joinGroup(new InetSocketAddress(_group, MULTICAST_PORT), ni);
+                joined++;
+            } catch (IOException e) {
+                if (Log.isEnabled(Log.Level.DEBUG)) {
+                    Log.debug("discovery.start", "skipping interface " + ni.getName() + ": " + e.getMessage());
+                }
+            }
+        }
+        return joined;
+    }
+
+    @Override
+    public void run() {
+        byte[] buffer = new byte[512];
+        while (isRunning()) {
+            DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+            try {
+                mSocket.receive(packet);
+                String message = new String(packet.getData(), packet.getOffset(), packet.getLength(), StandardCharsets.US_ASCII);
+                handleAnnouncement(packet.getAddress().getHostAddress(), message, mClock.currentTimeMillis());
+            } catch (IOException e) {
+                if (isRunning()) {
+                    Log.warn("discovery.receive", e.getMessage(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Parses an announcement and refreshes the matching endpoint, unverified endpoints get verified.
+     *
+     * @return true if the announcement was accepted
+     */
+    boolean handleAnnouncement(String _host, String _message, long _now) {
+        String[] parts = _message.trim().split(" ");
+        if (parts.length != 4 || !parts[0].equals(ANNOUNCE_PREFIX) || !parts[1].equals(ANNOUNCE_VERSION)) {
+            return false;
+        }
+
+        String pinned = getPinnedFingerprint();
+        if (pinned == null || !pinned.equalsIgnoreCase(parts[3])) {
+            return false;
+        }
+
+        int port;
+        try {
+            port = Integer.parseInt(parts[2]);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        if (port <= 0 || port > 65535) {
+            return false;
+        }
+
+        String key = _host + ":" + port;
+        DaemonEndpoint endpoint = mEndpoints.get(key);
+        if (endpoint == null) {
+            evictExpired(_now);
+            if ((getUnverifiedCount(_host) >= MAX_UNVERIFIED_PER_HOST && !evictUnverified(_host))
+                    || (getDiscoveredCount(false) >= MAX_UNVERIFIED_ENDPOINTS && !evictUnverified(null))) {
+                // all candidates are still being verified
+                return false;
+            }
+            endpoint = new DaemonEndpoint(_host, port, false);
+            mEndpoints.put(key, endpoint);
+        }
+        endpoint.setLastSeen(_now);
+        if (!endpoint.isVerified()) {
+            scheduleVerification(endpoint, _now);
+        }
+        return true;
+    }
+
+    private void scheduleVerification(final DaemonEndpoint _endpoint, long _now) {
+        final X509Certificate pinned = mPinnedCertificate;
+        if (pinned == null || (_endpoint.getVerifyAttempt() >= 0 && _now - _endpoint.getVerifyAttempt() < REVERIFY_MILLIS)
+                || !mVerifying.add(_endpoint.getKey())) {
+            return;
+        }
+        _endpoint.setVerifyAttempt(_now);
+        try {
+            mVerifierExecutor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        verify(_endpoint, pinned);
+                    } finally {
+                        mVerifying.remove(_endpoint.getKey());
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // queue is full, tried again with a later announcement
+            _endpoint.setVerifyAttempt(-1);
+            mVerifying.remove(_endpoint.getKey());
+        }
+    }
+
+    // verifier thread
+    private void verify(DaemonEndpoint _endpoint, X509Certificate _pinned) {
+        String key = _endpoint.getKey();
+        if (mEndpoints.get(key) != _endpoint) {
+            // evicted while queued
+            return;
+        }
+        if (!mVerifier.verify(_endpoint, _pinned)) {
+            if (Log.isEnabled(Log.Level.WARN)) {
+                Log.warn("discovery.unverified", key + " announced the pinned fingerprint without holding the certificate");
+            }
+            return;
+        }
+        if (mEndpoints.get(key) != _endpoint) {
+            // evicted meanwhile
+            return;
+        }
+        if (getDiscoveredCount(true) >= MAX_DISCOVERED_ENDPOINTS) {
+            mEndpoints.remove(key);
+            if (Log.isEnabled(Log.Level.WARN)) {
+                Log.warn("discovery.full", "ignoring " + key);
+            }
+            return;
+        }
+        _endpoint.setVerified(true);
+        Log.info("discovery.found", key);
+    }
+
+    /**
+     * Adds the manually configured endpoint, it is never dropped from the table.
+     */
+    public DaemonEndpoint addStaticEndpoint(DaemonEndpoint _endpoint) {
+        DaemonEndpoint known = mEndpoints.get(_endpoint.getKey());
+        if (known != null) {
+            return known;
+        }
+        mEndpoints.put(_endpoint.getKey(), _endpoint);
+        return _endpoint;
+    }
+
+    // discovered endpoints which did not announce themselves within the ttl are dropped, static ones stay
+    private void evictExpired(long _now) {
+        Iterator<DaemonEndpoint> iterator = mEndpoints.values().iterator();
+        while (iterator.hasNext()) {
+            DaemonEndpoint endpoint = iterator.next();
+            if (!endpoint.isStatic() && _now - endpoint.getLastSeen() >= ENDPOINT_TTL_MILLIS) {
+                iterator.remove();
+            }
+        }
+    }
+
+    // drops the least recently seen unverified entry (of the host, if given) that is not being verified
+    private boolean evictUnverified(String _host) {
+        DaemonEndpoint oldest = null;
+        for (DaemonEndpoint endpoint : mEndpoints.values()) {
+            if (!endpoint.isStatic() && !endpoint.isVerified() && !mVerifying.contains(endpoint.getKey())
+                    && (_host == null || endpoint.getHost().equals(_host))
+                    && (oldest == null || endpoint.getLastSeen() < oldest.getLastSeen())) {
+                oldest = endpoint;
+            }
+        }
+        if (oldest == null) {
+            return false;
+        }
+        mEndpoints.remove(oldest.getKey());
+        return true;
+    }
+
+    private int getUnverifiedCount(String _host) {
+        int count = 0;
+        for (DaemonEndpoint endpoint : mEndpoints.values()) {
+            if (!endpoint.isStatic() && !endpoint.isVerified() && endpoint.getHost().equals(_host)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private int getDiscoveredCount(boolean _verified) {
+        int count = 0;
+        for (DaemonEndpoint endpoint : mEndpoints.values()) {
+            if (!endpoint.isStatic() && endpoint.isVerified() == _verified) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return all live endpoints in a stable order (by address)
+     */
+    public List<DaemonEndpoint> getLiveEndpoints(long _now) {
+        evictExpired(_now);
+        List<DaemonEndpoint> live = new ArrayList<>();
+        for (DaemonEndpoint endpoint : mEndpoints.values()) {
+            if (endpoint.isLive(_now, ENDPOINT_TTL_MILLIS)) {
+                live.add(endpoint);
+            }
+        }
+        Collections.sort(live, new Comparator<DaemonEndpoint>() {
+            public int compare(DaemonEndpoint a, DaemonEndpoint b) {
+                return a.getKey().compareTo(b.getKey());
+            }
+        });
+        return live;
+    }
+
+    /**
+     * Marks the given endpoint as failed and picks the live endpoint following it. A failed discovered
+     * endpoint has to be verified again before it is live, announcing itself is not enough.
+     *
+     * @return the next live endpoint or null if there is none
+     */
+    public DaemonEndpoint failover(DaemonEndpoint _failed, long _now) {
+        if (_failed != null) {
+            _failed.setLastFailure(_now);
+            if (!_failed.isStatic()) {
+                _failed.setVerified(false);
+            }
+        }
+        List<DaemonEndpoint> live = getLiveEndpoints(_now);
+        if (live.isEmpty()) {
+            return null;
+        }
+        if (_failed != null) {
+            for (DaemonEndpoint endpoint : live) {
+                if (endpoint.getKey().compareTo(_failed.getKey()) > 0) {
+                    return endpoint;
+                }
+            }
+        }
+        return live.get(0);
+    }
+
+    public int getLiveCount(long _now) {
+        return getLiveEndpoints(_now).size();
+    }
+
+    /**
+     * @return true if the host was verified to hold the pinned certificate and still announces itself
+     */
+    public boolean isKnownHost(String _host) {
+        for (DaemonEndpoint endpoint : mEndpoints.values()) {
+            if (!endpoint.isStatic() && endpoint.isVerified() && endpoint.getHost().equals(_host)
+                    && mClock.currentTimeMillis() - endpoint.getLastSeen() < ENDPOINT_TTL_MILLIS) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public static String fingerprint(X509Certificate _cert) throws CertificateEncodingException, NoSuchAlgorithmException {
+        byte[] digest = MessageDigest.getInstance("SHA-256").digest(_cert.getEncoded());
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    // Getters & Setters
+    public boolean isRunning() {
+        return mRunning;
+    }
+
+    private String getPinnedFingerprint() {
+        return mPinnedFingerprint;
+    }
+
+    public void setPinnedCertificate(X509Certificate _cert) {
+        mPinnedCertificate = _cert;
+        try {
+            mPinnedFingerprint = fingerprint(_cert);
+        } catch (CertificateEncodingException | NoSuchAlgorithmException e) {
+            Log.error("discovery.pin", e.getMessage(), e);
+            mPinnedFingerprint = null;
+        }
+    }
+}
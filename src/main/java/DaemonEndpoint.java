@@ -0,0 +1,111 @@
+/**
+ * A single proximity daemon address together with its liveness timestamps.
+ * Instances are kept in the endpoint table of {@link DaemonDiscovery}.
+ */
+public class DaemonEndpoint {
+
+    private final String mHost;
+    private final int mPort;
+    private final boolean mStatic;
+
+    private volatile long mLastSeen;
+    private volatile long mLastFailure;
+    private volatile boolean mVerified;
+    private volatile long mVerifyAttempt = -1;
+
+    public DaemonEndpoint(String _host, int _port, boolean _static) {
+        mHost = _host;
+        mPort = _port;
+        mStatic = _static;
+    }
+
+    /**
+     * Parses an address of the form "host:port" as entered in the GUI.
+     *
+     * @return the endpoint or null if the address can't be parsed
+     */
+    public static DaemonEndpoint parse(String _address, boolean _static) {
+        if (_address == null) {
+            return null;
+        }
+        int separator = _address.lastIndexOf(':');
+        if (separator <= 0 || separator == _address.length() - 1) {
+            return null;
+        }
+        try {
+            int port = Integer.parseInt(_address.substring(separator + 1));
+            return new DaemonEndpoint(_address.substring(0, separator), port, _static);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * A discovered endpoint is live if it proved to hold the pinned certificate since its last failure and
+     * announced itself within the ttl.
+     * Static (manually configured) endpoints never announce, they are retried once the ttl after a failure passed.
+     */
+    public boolean isLive(long _now, long _ttl) {
+        if (isStatic()) {
+            return getLastFailure() == 0 || _now - getLastFailure() >= _ttl;
+        }
+        return isVerified() && getLastSeen() > getLastFailure() && _now - getLastSeen() < _ttl;
+    }
+
+    public String getKey() {
+        return getHost() + ":" + getPort();
+    }
+
+    @Override
+    public String toString() {
+        return getKey();
+    }
+
+    // Getters & Setters
+    public String getHost() {
+        return mHost;
+    }
+
+    public int getPort() {
+        return mPort;
+    }
+
+    public boolean isStatic() {
+        return mStatic;
+    }
+
+    public long getLastSeen() {
+        return mLastSeen;
+    }
+
+    public void setLastSeen(long _lastSeen) {
+        mLastSeen = _lastSeen;
+    }
+
+    public long getLastFailure() {
+        return mLastFailure;
+    }
+
+    public void setLastFailure(long _lastFailure) {
+        mLastFailure = _lastFailure;
+    }
+
+    public boolean isVerified() {
+        return mVerified;
+    }
+
+    public void setVerified(boolean _verified) {
+        mVerified = _verified;
+    }
+
+    /**
+     * @return when the verification was last attempted, -1 if never
+     */
+    public long getVerifyAttempt() {
+        return mVerifyAttempt;
+    }
+
+    public void setVerifyAttempt(long _time) {
+        mVerifyAttempt = _time;
+    }
+}
@@ -0,0 +1,9 @@
+/**
+ * Performs a single /checkForAuthToken request against a daemon endpoint.
+ */
+public interface DaemonTransport {
+
+    CheckResult check(DaemonEndpoint _endpoint);
+
+    void disconnect();
+}
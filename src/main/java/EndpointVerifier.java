@@ -0,0 +1,15 @@
+import java.security.cert.X509Certificate;
+
+/**
+ * Proves that a discovered daemon holds the pinned certificate before {@link DaemonDiscovery} treats it as live.
+ * Announcements only carry the public fingerprint, so anybody on the LAN can repeat them.
+ */
+public interface EndpointVerifier {
+
+    /**
+     * May block for a network round trip, called on the verifier thread of the discovery.
+     *
+     * @return true if the endpoint presented exactly the pinned certificate
+     */
+    boolean verify(DaemonEndpoint _endpoint, X509Certificate _pinned);
+}
@@ -12,7 +12,7 @@ import java.util.regex.Pattern;
 
 public class GUI extends JFrame implements ActionListener, ChangeListener {
 
-    private static final String PROPERTIES_PATH_NAME = "config.winBTProxmityClient";
+    private static final String PROPERTIES_PATH_NAME = ProximityClient.PROPERTIES_PATH_NAME;
 
     private JPanel root;
 
@@ -48,6 +48,11 @@ public class GUI extends JFrame implements ActionListener, ChangeListener {
     private int mTimeInterval;
     private int mLevel;
     private String mHmac;
+    private boolean mDiscovery = true;
+    private int mPresencePort = LocalPresenceServer.DEFAULT_PORT;
+    private int mMinPollInterval = 1;
+    private int mMaxPollInterval = 0;
+    private Log.Level mLogLevel = Log.Level.INFO;
 
     // constructor
     public GUI(BTClient _BTClient) {
@@ -62,20 +67,20 @@ public class GUI extends JFrame implements ActionListener, ChangeListener {
 
         // try to load saved data
         if (loadPrefs()) {
-            System.out.println("Could load prefs");
+            Log.info("prefs.load", "loaded " + PROPERTIES_PATH_NAME);
             setupValues(getIP(), getPort(), getCertPath(), getTimeInterval(), getLevel(), getHMAC());
         } else {
-            System.out.println("Could NOT load prefs");
+            Log.info("prefs.load", "could not load " + PROPERTIES_PATH_NAME + ", using defaults");
             setupValues("localhost", "4567", "MISSING!", 15, 1, "");  // setup default values
         }
 
         // start service (silently)
         if (isStartSilent()) {
-            System.out.println("-> start silently");
+            Log.info("client.start", "silently");
             setVisible(false);
             initClient();
         } else {
-            System.out.println("-> start normally");
+            Log.info("client.start", "normally");
             setVisible(true);
         }
     }
@@ -205,6 +210,9 @@ public class GUI extends JFrame implements ActionListener, ChangeListener {
         mBTClient.setHostURL(getIP() + ":" + getPort());
         mBTClient.setTimeInterval(getTimeInterval());
         mBTClient.setCertPath(getCertPath());
+        mBTClient.setDiscoveryEnabled(isDiscovery());
+        mBTClient.setPresencePort(getPresencePort());
+        mBTClient.setPollIntervalBounds(getMinPollInterval(), getMaxPollInterval());
 
         mBTClient.setActivated(true);
     }
@@ -215,8 +223,7 @@ public class GUI extends JFrame implements ActionListener, ChangeListener {
             try {
                 return mPropFile.createNewFile();
             } catch (IOException e) {
-                System.out.println("can't create prop file");
-                e.printStackTrace();
+                Log.error("prefs.load", "can't create prop file", e);
                 return false;
             }
         }
@@ -243,17 +250,21 @@ public class GUI extends JFrame implements ActionListener, ChangeListener {
 
             setStartSilent(Boolean.parseBoolean(mProperties.getProperty("silentStart", String.valueOf(false))));
             setHMAC(mProperties.getProperty("hmac", errStringLoad));
+            setDiscovery(Boolean.parseBoolean(mProperties.getProperty("discovery", String.valueOf(true))));
+            setPresencePort(Integer.parseInt(mProperties.getProperty("presencePort", String.valueOf(LocalPresenceServer.DEFAULT_PORT))));
+            setMinPollInterval(Integer.parseInt(mProperties.getProperty("minPollInterval", String.valueOf(1))));
+            setMaxPollInterval(Integer.parseInt(mProperties.getProperty("maxPollInterval", String.valueOf(0))));
+            setLogLevel(Log.parseLevel(mProperties.getProperty("logLevel", Log.Level.INFO.toString())));
 
         } catch (IOException e) {
-            System.out.println("can'read prop file");
-            e.printStackTrace();
+            Log.error("prefs.load", "can't read prop file", e);
             return false;
         } finally {
             if (mInputProp != null) {
                 try {
                     mInputProp.close();
                 } catch (IOException e) {
-                    e.printStackTrace();
+                    Log.warn("prefs.load", "can't close prop file", e);
                 }
             }
         }
@@ -284,11 +295,15 @@ public class GUI extends JFrame implements ActionListener, ChangeListener {
             mProperties.setProperty("silentStart", String.valueOf(_silent));
             mProperties.setProperty("level", String.valueOf(_level));
             mProperties.setProperty("hmac", _hmac);
+            mProperties.setProperty("discovery", String.valueOf(isDiscovery()));
+            mProperties.setProperty("presencePort", String.valueOf(getPresencePort()));
+            mProperties.setProperty("minPollInterval", String.valueOf(getMinPollInterval()));
+            mProperties.setProperty("maxPollInterval", String.valueOf(getMaxPollInterval()));
+            mProperties.setProperty("logLevel", getLogLevel().toString());
 
             mProperties.store(mOutputProp, null);
         } catch (IOException e) {
-            System.out.println("Can't save properties");
-            e.printStackTrace();
+            Log.error("prefs.save", "can't save properties", e);
         }
     }
 
@@ -390,6 +405,48 @@ public class GUI extends JFrame implements ActionListener, ChangeListener {
         return mLevel;
     }
 
+    private boolean isDiscovery() {
+        return mDiscovery;
+    }
+
+    private void setDiscovery(boolean _discovery) {
+        mDiscovery = _discovery;
+    }
+
+    private int getPresencePort() {
+        return mPresencePort;
+    }
+
+    private void setPresencePort(int _port) {
+        mPresencePort = _port;
+    }
+
+    private int getMinPollInterval() {
+        return mMinPollInterval;
+    }
+
+    private void setMinPollInterval(int _min) {
+        mMinPollInterval = Math.max(1, _min);
+    }
+
+    private int getMaxPollInterval() {
+        return mMaxPollInterval;
+    }
+
+    // 0 stands for the default of four times the time interval
+    private void setMaxPollInterval(int _max) {
+        mMaxPollInterval = Math.max(0, _max);
+    }
+
+    private Log.Level getLogLevel() {
+        return mLogLevel;
+    }
+
+    private void setLogLevel(Log.Level _level) {
+        mLogLevel = _level;
+        Log.setLevel(_level);
+    }
+
     private void setLevel(int _level) {
         mLevel = _level;
     }
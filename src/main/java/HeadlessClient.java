@@ -0,0 +1,110 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+
+/**
+ * Client without GUI and tray, meant to be compiled with GraalVM native-image (see native/build-native.sh)
+ * so the session is protected right after login. It reads the properties file written by the GUI and never
+ * touches AWT or Swing.
+ * <pre>
+ * HeadlessClient [--config config.winBTProxmityClient] [--once]
+ * </pre>
+ * With --once it exits after the first check and prints the time to that check and the peak RSS,
+ * which is what native/startup-bench.sh measures; the exit status is 0 only if the daemon answered.
+ * Otherwise it runs until stopped and exits with status 1 if the client deactivated itself.
+ */
+public class HeadlessClient implements PollListener {
+
+    private final long mStartNanos;
+    private final boolean mOnce;
+    private final ProximityClient mClient;
+    private volatile int mExitStatus = 1;
+
+    private HeadlessClient(long _startNanos, boolean _once, ProximityClient _client) {
+        mStartNanos = _startNanos;
+        mOnce = _once;
+        mClient = _client;
+    }
+
+    public static void main(String[] args) {
+        long startNanos = System.nanoTime();
+
+        String configPath = ProximityClient.PROPERTIES_PATH_NAME;
+        boolean once = false;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--config") && i + 1 < args.length) {
+                configPath = args[++i];
+            } else if (args[i].equals("--once")) {
+                once = true;
+            } else {
+                System.err.println("usage: HeadlessClient [--config <file>] [--once]");
+                System.exit(2);
+            }
+        }
+
+        Properties properties = new Properties();
+        try (FileInputStream in = new FileInputStream(configPath)) {
+            properties.load(in);
+        } catch (IOException e) {
+            System.err.println("can't read " + configPath + ": " + e.getMessage());
+            System.exit(1);
+        }
+
+        Log.setLevel(Log.parseLevel(properties.getProperty("logLevel", Log.Level.INFO.toString())));
+        Log.start(new File(Log.DEFAULT_FILE));
+
+        ScreenLocker locker = System.getProperty("os.name", "").startsWith("Windows")
+                ? new WindowsScreenLocker() : new LinuxScreenLocker();
+        ProximityClient client = new ProximityClient(locker);
+        if (!client.configure(properties)) {
+            System.err.println("invalid configuration in " + configPath);
+            System.exit(1);
+        }
+        // a single check neither needs other daemons nor local consumers
+        if (once) {
+            client.setDiscoveryEnabled(false);
+            client.setPresencePort(0);
+        }
+
+        HeadlessClient headless = new HeadlessClient(startNanos, once, client);
+        client.addListener(headless);
+        client.run();
+        System.exit(headless.mExitStatus);
+    }
+
+    // peak resident set size in kB from /proc, -1 where there is no procfs
+    private static long peakRssKb() {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream("/proc/self/status"), StandardCharsets.US_ASCII))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("VmHWM:")) {
+                    return Long.parseLong(line.substring(6).replace("kB", "").trim());
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            // not on Linux
+        }
+        return -1;
+    }
+
+    // PollListener
+    public void onCheck(DaemonEndpoint _endpoint, CheckResult _result, long _latencyMillis) {
+        if (mOnce) {
+            long elapsed = (System.nanoTime() - mStartNanos) / 1000000;
+            System.out.println("first check: " + _result + " after " + elapsed + " ms, peak RSS " + peakRssKb() + " kB");
+            CheckResult.Status status = _result.getStatus();
+            mExitStatus = status == CheckResult.Status.PRESENT || status == CheckResult.Status.ABSENT ? 0 : 1;
+            mClient.deactivate();
+        }
+    }
+
+    public void onLock(long _time) {
+    }
+
+    public void onDeactivated(long _time) {
+        Log.warn("client.activated", "false");
+        System.err.println("client deactivated itself, see " + Log.DEFAULT_FILE);
+        mExitStatus = 1;
+    }
+}
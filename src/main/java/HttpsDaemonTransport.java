@@ -0,0 +1,263 @@
+import javax.net.ssl.*;
+import java.io.IOException;
+import java.net.URL;
+import java.security.*;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Queries /checkForAuthToken over HTTPS, trusting only the pinned daemon certificate.
+ */
+public class HttpsDaemonTransport implements DaemonTransport {
+
+    // optional pacing hint of the daemon, seconds until the next check
+    public static final String HEADER_NEXT_POLL_IN = "X-Next-Poll-In";
+    public static final String HEADER_RETRY_AFTER = "Retry-After";
+
+    // connect and read each give up after this, or a third of the poll interval if that is shorter
+    private static final int MAX_TIMEOUT_MILLIS = 5000;
+    private static final int MIN_TIMEOUT_MILLIS = 1000;
+
+    private final X509Certificate mBTx509Cert;
+    private final PublicKey mBTPublicKey;
+    private final DaemonDiscovery mDiscovery;
+    private final Clock mClock;
+
+    private int level;
+    private String hmac;
+    private int mTimeoutMillis = MAX_TIMEOUT_MILLIS;
+
+    private HttpsURLConnection mConnection;
+
+    public HttpsDaemonTransport(X509Certificate _cert, DaemonDiscovery _discovery, Clock _clock) {
+        mBTx509Cert = _cert;
+        mBTPublicKey = _cert != null ? _cert.getPublicKey() : null;
+        mDiscovery = _discovery;
+        mClock = _clock;
+    }
+
+    public CheckResult check(DaemonEndpoint _endpoint) {
+        initConnection(_endpoint);
+        if (getConnection() == null) {
+            return new CheckResult(CheckResult.Status.NO_ANSWER);
+        }
+
+        CheckResult.Status status = connectAndVerifyConnection();
+        if (status != null) {
+            return new CheckResult(status);
+        }
+        return queryBTResult();
+    }
+
+    private void initConnection(DaemonEndpoint _endpoint) {
+        setConnection(null);
+        try {
+            KeyStore keystore = KeyStore.getInstance(KeyStore.getDefaultType());
+            keystore.load(null, null);
+            keystore.setCertificateEntry("BT Daemon", mBTx509Cert);
+
+            TrustManagerFactory tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+            tmf.init(keystore);
+
+            SSLContext sslCtx = SSLContext.getInstance("TLS");
+            sslCtx.init(null, tmf.getTrustManagers(), null);
+
+            SSLSocketFactory sslFactory = sslCtx.getSocketFactory();
+
+            String hostURL = getHostURL(_endpoint);
+            if (Log.isEnabled(Log.Level.DEBUG)) {
+                Log.debug("connection.init", hostURL);
+            }
+            URL url = new URL(hostURL);
+
+            HttpsURLConnection connection = (HttpsURLConnection) url.openConnection();
+            connection.setSSLSocketFactory(sslFactory);
+            // an old address that drops packets or a daemon that stalls must not hold up the poll
+            connection.setConnectTimeout(getTimeoutMillis());
+            connection.setReadTimeout(getTimeoutMillis());
+            // discovered daemons passed the fingerprint check of their announcement
+            connection.setHostnameVerifier(new HostnameVerifier() {
+                public boolean verify(String hostname, SSLSession session) {
+                    return hostname.equals("192.168.2.2") || getDiscovery().isKnownHost(hostname);
+                }
+            });
+
+            setConnection(connection);
+        } catch (IOException e) {
+            Log.error("connection.init", e.getMessage(), e);
+        } catch (KeyStoreException | CertificateException | NoSuchAlgorithmException | KeyManagementException e) {
+            Log.error("connection.init", e.getMessage(), e);
+        }
+    }
+
+    // returns null if the connection is up and verified, the failure otherwise
+    private CheckResult.Status connectAndVerifyConnection() {
+        try {
+            getConnection().connect();
+
+            Certificate[] listCerts = getConnection().getServerCertificates();
+            for (Certificate cert : listCerts) {
+                cert.verify(mBTPublicKey);
+            }
+            return null;
+        } catch (IOException e) {
+            Log.warn("connection.unreachable", e.getMessage(), e);
+            disconnect();
+            return CheckResult.Status.UNREACHABLE;
+        } catch (InvalidKeyException e) {
+            disconnect();
+            return CheckResult.Status.INVALID_KEY;
+        } catch (CertificateException | NoSuchAlgorithmException | SignatureException | NoSuchProviderException e) {
+            Log.error("connection.verify", e.getMessage(), e);
+        }
+        return CheckResult.Status.FAILED;
+    }
+
+    private CheckResult queryBTResult() {
+        CheckResult.Status status = CheckResult.Status.NO_ANSWER;
+
+        int responseCode;
+        try {
+            responseCode = getConnection().getResponseCode();
+        } catch (IOException e) {
+            Log.warn("connection.query", e.getMessage(), e);
+            disconnect();
+            return new CheckResult(status);
+        }
+
+        Map<String, List<String>> headers = getConnection().getHeaderFields();
+
+        // daemon is overloaded or busy scanning and tells us when to come back
+        if (isBusy(responseCode)) {
+            long retryAfter = parseRetryAfter(getHeader(headers, HEADER_RETRY_AFTER), getClock().currentTimeMillis());
+            if (Log.isEnabled(Log.Level.INFO)) {
+                Log.info("daemon.busy", responseCode + ", retry after " + retryAfter + " ms");
+            }
+            disconnect();
+            return new CheckResult(CheckResult.Status.BUSY, retryAfter);
+        }
+
+        List<String> ListFoundBT = getHeader(headers, "foundBT");
+        if (ListFoundBT != null) {
+            for (String foundBTResult : ListFoundBT) {
+                if (!foundBTResult.equals("true")) {
+                    status = CheckResult.Status.ABSENT;
+                } else if (status == CheckResult.Status.NO_ANSWER) {
+                    status = CheckResult.Status.PRESENT;
+                }
+            }
+        }
+
+        long nextPoll = parseSeconds(getHeader(headers, HEADER_NEXT_POLL_IN));
+
+        disconnect();
+        return new CheckResult(status, nextPoll);
+    }
+
+    // 429 Too Many Requests and 503 Service Unavailable both carry a Retry-After
+    static boolean isBusy(int _responseCode) {
+        return _responseCode == 429 || _responseCode == 503;
+    }
+
+    // header names are case-insensitive, the map keeps them as the daemon sent them
+    static List<String> getHeader(Map<String, List<String>> _headers, String _name) {
+        for (Map.Entry<String, List<String>> header : _headers.entrySet()) {
+            if (header.getKey() != null && header.getKey().equalsIgnoreCase(_name)) {
+                return header.getValue();
+            }
+        }
+        return null;
+    }
+
+    // delta-seconds in milliseconds, -1 if missing, malformed, negative or not finite
+    static long parseSeconds(List<String> _values) {
+        if (_values == null || _values.isEmpty() || _values.get(0) == null) {
+            return -1;
+        }
+        try {
+            double seconds = Double.parseDouble(_values.get(0).trim());
+            return seconds >= 0 && !Double.isInfinite(seconds) ? (long) (seconds * 1000) : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // Retry-After is either delta-seconds or an HTTP-date, the latter relative to _now, -1 if neither
+    static long parseRetryAfter(List<String> _values, long _now) {
+        long millis = parseSeconds(_values);
+        if (millis >= 0 || _values == null || _values.isEmpty() || _values.get(0) == null) {
+            return millis;
+        }
+        try {
+            SimpleDateFormat httpDate = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+            httpDate.setLenient(false);
+            return Math.max(0, httpDate.parse(_values.get(0).trim()).getTime() - _now);
+        } catch (ParseException e) {
+            return -1;
+        }
+    }
+
+    public void disconnect() {
+        if (getConnection() != null) {
+            getConnection().disconnect();
+        }
+    }
+
+    private String getHostURL(DaemonEndpoint _endpoint) {
+        String hostURL = "https://" + _endpoint.getKey() + "/checkForAuthToken?level=" + String.valueOf(getLevel());
+        if (getLevel() == 3 && !getHMAC().equals("-1")) {
+            hostURL = "https://" + _endpoint.getKey() + "/checkForAuthToken?level=" + String.valueOf(getLevel() + "&hmac=" + getHMAC());
+        }
+        return hostURL;
+    }
+
+    // Getters & Setters
+    private HttpsURLConnection getConnection() {
+        return mConnection;
+    }
+
+    private void setConnection(HttpsURLConnection _conn) {
+        mConnection = _conn;
+    }
+
+    private DaemonDiscovery getDiscovery() {
+        return mDiscovery;
+    }
+
+    private Clock getClock() {
+        return mClock;
+    }
+
+    private int getLevel() {
+        return level;
+    }
+
+    public void setLevel(int _level) {
+        level = _level;
+    }
+
+    private String getHMAC() {
+        return hmac;
+    }
+
+    public void setHMAC(String _hmac) {
+        hmac = _hmac;
+    }
+
+    private int getTimeoutMillis() {
+        return mTimeoutMillis;
+    }
+
+    /**
+     * Keeps connect and read timeouts well below the poll interval, so failover happens within one poll.
+     */
+    public void setPollInterval(long _intervalMillis) {
+        mTimeoutMillis = (int) Math.max(MIN_TIMEOUT_MILLIS, Math.min(MAX_TIMEOUT_MILLIS, _intervalMillis / 3));
+    }
+}
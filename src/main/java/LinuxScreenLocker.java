@@ -0,0 +1,17 @@
+import java.io.IOException;
+
+/**
+ * Locks the current session through systemd-logind, used by the headless client on Linux.
+ */
+public class LinuxScreenLocker implements ScreenLocker {
+
+    public void lock() {
+        try {
+            Log.info("screen.lock", "loginctl lock-session");
+            Process pr = new ProcessBuilder("loginctl", "lock-session").start();
+            pr.waitFor();
+        } catch (IOException | InterruptedException e) {
+            Log.error("screen.lock", e.getMessage(), e);
+        }
+    }
+}
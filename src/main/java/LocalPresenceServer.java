@@ -0,0 +1,168 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Publishes the cached presence to other software on this workstation, bound to the loopback interface only.
+ * <ul>
+ * <li>GET /presence - the latest state as JSON, e.g. {"state":"PRESENT","ageMillis":812,"changedAt":...,"sequence":3}</li>
+ * <li>GET /presence/stream - one JSON line per state change, an empty line every 10 seconds as keep-alive</li>
+ * </ul>
+ * Only GET requests from this machine that name the server as 127.0.0.1 or localhost in the Host header are
+ * answered, so a web page can't read the presence through DNS rebinding. No CORS headers are sent.
+ * Consumers never cause additional daemon requests. At most {@link #MAX_SUBSCRIBERS} streams are served at a time,
+ * further subscribers get 503.
+ */
+public class LocalPresenceServer {
+
+    public static final int DEFAULT_PORT = 4569;
+    public static final int MAX_SUBSCRIBERS = 8;
+    // also how soon a subscriber that went away is noticed, writes to its socket fail from the second one on
+    private static final long KEEP_ALIVE_MILLIS = 10000;
+    // threads left for /presence and for refusing subscribers while all streams are taken
+    private static final int SPARE_THREADS = 2;
+
+    private final PresenceCache mCache;
+    private final Clock mClock;
+    private final AtomicInteger mSubscribers = new AtomicInteger();
+    private HttpServer mServer;
+    private ExecutorService mExecutor;
+
+    public LocalPresenceServer(PresenceCache _cache, Clock _clock) {
+        mCache = _cache;
+        mClock = _clock;
+    }
+
+    public synchronized boolean start(int _port) {
+        if (mServer != null) {
+            return true;
+        }
+        try {
+            HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), _port), 0);
+            server.createContext("/presence", new HttpHandler() {
+                public void handle(HttpExchange exchange) throws IOException {
+                    handlePresence(exchange);
+                }
+            });
+            server.createContext("/presence/stream", new HttpHandler() {
+                public void handle(HttpExchange exchange) throws IOException {
+                    handleStream(exchange);
+                }
+            });
+
+            // every subscriber holds a thread while streaming, requests beyond the pool wait in the queue
+            int threads = MAX_SUBSCRIBERS + SPARE_THREADS;
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "presence-server");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            executor.allowCoreThreadTimeOut(true);
+            mExecutor = executor;
+            server.setExecutor(mExecutor);
+            server.start();
+            mServer = server;
+            Log.info("presence.server", "listening on 127.0.0.1:" + _port);
+            return true;
+        } catch (IOException e) {
+            Log.error("presence.server", e.getMessage(), e);
+            return false;
+        }
+    }
+
+    public synchronized void stop() {
+        if (mServer != null) {
+            mServer.stop(0);
+            mExecutor.shutdownNow();
+            mServer = null;
+        }
+    }
+
+    private boolean accept(HttpExchange _exchange) throws IOException {
+        if (!_exchange.getRemoteAddress().getAddress().isLoopbackAddress()
+                || !_exchange.getRequestMethod().equals("GET")
+                || !isLocalHost(_exchange.getRequestHeaders().getFirst("Host"), _exchange.getLocalAddress().getPort())) {
+            _exchange.sendResponseHeaders(403, -1);
+            _exchange.close();
+            return false;
+        }
+        return true;
+    }
+
+    // a browser sends the name of the page's origin here, which is not one of ours after DNS rebinding
+    static boolean isLocalHost(String _host, int _port) {
+        if (_host == null) {
+            return false;
+        }
+        String host = _host.trim().toLowerCase(Locale.ROOT);
+        return host.equals("127.0.0.1:" + _port) || host.equals("localhost:" + _port);
+    }
+
+    private void handlePresence(HttpExchange _exchange) throws IOException {
+        if (!accept(_exchange)) {
+            return;
+        }
+        byte[] body = mCache.get().toJson(mClock.currentTimeMillis()).getBytes(StandardCharsets.UTF_8);
+        _exchange.getResponseHeaders().add("Content-Type", "application/json");
+        _exchange.getResponseHeaders().add("Cache-Control", "no-store");
+        _exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = _exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private void handleStream(HttpExchange _exchange) throws IOException {
+        if (!accept(_exchange)) {
+            return;
+        }
+        if (mSubscribers.incrementAndGet() > MAX_SUBSCRIBERS) {
+            mSubscribers.decrementAndGet();
+            if (Log.isEnabled(Log.Level.WARN)) {
+                Log.warn("presence.subscribers", "limit of " + MAX_SUBSCRIBERS + " reached, refusing "
+                        + _exchange.getRemoteAddress());
+            }
+            _exchange.getResponseHeaders().add("Retry-After", String.valueOf(KEEP_ALIVE_MILLIS / 1000));
+            _exchange.sendResponseHeaders(503, -1);
+            _exchange.close();
+            return;
+        }
+        try {
+            _exchange.getResponseHeaders().add("Content-Type", "application/x-ndjson");
+            _exchange.sendResponseHeaders(200, 0);
+            try (OutputStream out = _exchange.getResponseBody()) {
+                PresenceState state = mCache.get();
+                long sequence = -1;
+                while (true) {
+                    if (state.getSequence() > sequence) {
+                        out.write((state.toJson(mClock.currentTimeMillis()) + "\n").getBytes(StandardCharsets.UTF_8));
+                        sequence = state.getSequence();
+                    } else {
+                        out.write('\n');
+                    }
+                    out.flush();
+                    state = mCache.awaitChange(sequence, KEEP_ALIVE_MILLIS);
+                }
+            } catch (IOException | InterruptedException e) {
+                // subscriber went away or server stopped
+            }
+        } finally {
+            mSubscribers.decrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,214 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Asynchronous structured logging.
+ * <p>
+ * Callers only create a {@link LogEvent} and put it into a {@link LogRingBuffer}; formatting and file I/O
+ * happen on the "log-writer" thread, which writes size-capped, rotating files. A disabled level costs a single
+ * volatile read as long as the message needs no building; call sites that concatenate a message check
+ * {@link #isEnabled(Level)} first. A full buffer drops the event and counts it - logging never blocks a proximity check.
+ * A shutdown hook writes what is left in the buffer when the JVM exits.
+ * <pre>
+ * 2016-07-10 12:00:00.123 INFO  poll.check [main] latencyMs=41 PRESENT 192.168.2.2:4567
+ * </pre>
+ */
+public final class Log {
+
+    public enum Level {
+        DEBUG, INFO, WARN, ERROR, OFF
+    }
+
+    public static final String DEFAULT_FILE = "logs" + File.separator + "proximity-client.log";
+    private static final int BUFFER_CAPACITY = 4096;
+    private static final long MAX_FILE_BYTES = 1024 * 1024;
+    private static final int MAX_FILES = 5;
+    // producers wake the writer, this only bounds the delay of an event whose producer saw a non-empty buffer
+    private static final long IDLE_PARK_NANOS = 1000L * 1000 * 1000;
+    private static final long SHUTDOWN_WAIT_MILLIS = 2000;
+
+    private static final LogRingBuffer sBuffer = new LogRingBuffer(BUFFER_CAPACITY);
+    private static volatile int sThreshold = Level.INFO.ordinal();
+    private static volatile Thread sWriterThread;
+    private static volatile boolean sStopping;
+
+    private Log() {
+    }
+
+    /**
+     * Starts the background writer, events logged before are kept in the buffer.
+     */
+    public static synchronized void start(File _file) {
+        if (sWriterThread != null) {
+            return;
+        }
+        final RotatingFileWriter writer = new RotatingFileWriter(_file, MAX_FILE_BYTES, MAX_FILES);
+        sWriterThread = new Thread(new Runnable() {
+            public void run() {
+                drain(writer);
+            }
+        }, "log-writer");
+        sWriterThread.setDaemon(true);
+        sWriterThread.setPriority(Thread.MIN_PRIORITY);
+        sBuffer.setConsumer(sWriterThread);
+        sWriterThread.start();
+
+        // the writer is a daemon thread, without this System.exit would lose whatever is still buffered
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            public void run() {
+                shutdown();
+            }
+        }, "log-shutdown"));
+    }
+
+    /**
+     * Writes the buffered events, flushes and closes the file and stops the writer. Events logged afterwards
+     * stay in the buffer. Waits at most a few seconds, it runs as shutdown hook.
+     */
+    public static void shutdown() {
+        Thread writer = sWriterThread;
+        if (writer == null) {
+            return;
+        }
+        sStopping = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(SHUTDOWN_WAIT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public static boolean isEnabled(Level _level) {
+        return _level.ordinal() >= sThreshold;
+    }
+
+    public static void setLevel(Level _level) {
+        sThreshold = _level.ordinal();
+    }
+
+    /**
+     * @return the level with the given name, INFO if unknown
+     */
+    public static Level parseLevel(String _name) {
+        try {
+            return Level.valueOf(_name.trim().toUpperCase());
+        } catch (IllegalArgumentException | NullPointerException e) {
+            return Level.INFO;
+        }
+    }
+
+    public static long getDropped() {
+        return sBuffer.getDropped();
+    }
+
+    public static void debug(String _event, String _message) {
+        log(Level.DEBUG, _event, _message, -1, null);
+    }
+
+    public static void info(String _event, String _message) {
+        log(Level.INFO, _event, _message, -1, null);
+    }
+
+    public static void warn(String _event, String _message) {
+        log(Level.WARN, _event, _message, -1, null);
+    }
+
+    public static void warn(String _event, String _message, Throwable _error) {
+        log(Level.WARN, _event, _message, -1, _error);
+    }
+
+    public static void error(String _event, String _message) {
+        log(Level.ERROR, _event, _message, -1, null);
+    }
+
+    public static void error(String _event, String _message, Throwable _error) {
+        log(Level.ERROR, _event, _message, -1, _error);
+    }
+
+    public static void log(Level _level, String _event, String _message, long _latencyMillis, Throwable _error) {
+        if (!isEnabled(_level)) {
+            return;
+        }
+        sBuffer.offer(new LogEvent(System.currentTimeMillis(), _level, _event, _message, _latencyMillis, _error,
+                Thread.currentThread().getName()));
+    }
+
+    // log-writer thread: parks while the buffer is empty, the producer of the next event wakes it
+    private static void drain(RotatingFileWriter _writer) {
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+        StringBuilder line = new StringBuilder(256);
+        long reportedDropped = 0;
+        boolean written = false;
+
+        while (true) {
+            LogEvent event = sBuffer.poll();
+            if (event == null) {
+                long dropped = sBuffer.getDropped();
+                try {
+                    if (dropped != reportedDropped) {
+                        line.setLength(0);
+                        format(line, dateFormat, new LogEvent(System.currentTimeMillis(), Level.WARN, "log.dropped",
+                                (dropped - reportedDropped) + " events dropped, buffer full", -1, null, "log-writer"));
+                        _writer.write(line.toString());
+                        reportedDropped = dropped;
+                        written = true;
+                    }
+                    if (written) {
+                        _writer.flush();
+                        written = false;
+                    }
+                } catch (IOException e) {
+                    _writer.close();
+                }
+                if (sStopping) {
+                    _writer.close();
+                    return;
+                }
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+                continue;
+            }
+
+            line.setLength(0);
+            format(line, dateFormat, event);
+            try {
+                _writer.write(line.toString());
+                written = true;
+            } catch (IOException e) {
+                // reopened with the next event; there is no other place left to report this
+                _writer.close();
+            }
+        }
+    }
+
+    private static void format(StringBuilder _line, SimpleDateFormat _dateFormat, LogEvent _event) {
+        _line.append(_dateFormat.format(new Date(_event.getTimestamp()))).append(' ');
+        String level = _event.getLevel().toString();
+        _line.append(level);
+        for (int i = level.length(); i < 6; i++) {
+            _line.append(' ');
+        }
+        _line.append(_event.getEvent()).append(" [").append(_event.getThread()).append(']');
+        if (_event.getLatencyMillis() >= 0) {
+            _line.append(" latencyMs=").append(_event.getLatencyMillis());
+        }
+        if (_event.getError() != null) {
+            _line.append(" error=").append(_event.getError().getClass().getName());
+        }
+        if (_event.getMessage() != null) {
+            _line.append(' ').append(_event.getMessage().replace('\n', ' '));
+        }
+        _line.append(System.lineSeparator());
+
+        if (_event.getError() != null && _event.getLevel() == Level.ERROR) {
+            StringWriter trace = new StringWriter();
+            _event.getError().printStackTrace(new PrintWriter(trace));
+            _line.append(trace);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/**
+ * One structured log record. Created on the calling thread, formatted by the background writer of {@link Log}.
+ */
+public class LogEvent {
+
+    private final long mTimestamp;
+    private final Log.Level mLevel;
+    private final String mEvent;
+    private final String mMessage;
+    private final long mLatencyMillis;
+    private final Throwable mError;
+    private final String mThread;
+
+    public LogEvent(long _timestamp, Log.Level _level, String _event, String _message, long _latencyMillis,
+                    Throwable _error, String _thread) {
+        mTimestamp = _timestamp;
+        mLevel = _level;
+        mEvent = _event;
+        mMessage = _message;
+        mLatencyMillis = _latencyMillis;
+        mError = _error;
+        mThread = _thread;
+    }
+
+    // Getters
+    public long getTimestamp() {
+        return mTimestamp;
+    }
+
+    public Log.Level getLevel() {
+        return mLevel;
+    }
+
+    /**
+     * @return dotted event type, e.g. "poll.check"
+     */
+    public String getEvent() {
+        return mEvent;
+    }
+
+    public String getMessage() {
+        return mMessage;
+    }
+
+    /**
+     * @return latency of the logged operation or -1
+     */
+    public long getLatencyMillis() {
+        return mLatencyMillis;
+    }
+
+    public Throwable getError() {
+        return mError;
+    }
+
+    public String getThread() {
+        return mThread;
+    }
+}
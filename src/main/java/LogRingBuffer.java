@@ -0,0 +1,79 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded lock-free queue for many producers and the single log writer thread.
+ * <p>
+ * Producers claim a slot with a CAS on the tail and never wait: if the buffer is full the event is
+ * dropped and counted instead. The producer that puts an event into an empty buffer unparks the consumer,
+ * so the consumer can park while there is nothing to do.
+ */
+public class LogRingBuffer {
+
+    private final AtomicReferenceArray<LogEvent> mSlots;
+    private final int mMask;
+    private final AtomicLong mTail = new AtomicLong();
+    private final AtomicLong mHead = new AtomicLong();
+    private final AtomicLong mDropped = new AtomicLong();
+    private volatile Thread mConsumer;
+
+    /**
+     * @param _capacity rounded up to the next power of two
+     */
+    public LogRingBuffer(int _capacity) {
+        int capacity = Integer.highestOneBit(Math.max(2, _capacity) - 1) << 1;
+        mSlots = new AtomicReferenceArray<>(capacity);
+        mMask = capacity - 1;
+    }
+
+    /**
+     * @return false if the buffer was full and the event got dropped
+     */
+    public boolean offer(LogEvent _event) {
+        while (true) {
+            long tail = mTail.get();
+            long head = mHead.get();
+            if (tail - head >= mSlots.length()) {
+                mDropped.incrementAndGet();
+                return false;
+            }
+            if (mTail.compareAndSet(tail, tail + 1)) {
+                mSlots.set((int) tail & mMask, _event);
+                Thread consumer = mConsumer;
+                if (tail == head && consumer != null) {
+                    LockSupport.unpark(consumer);
+                }
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Only to be called from the consumer thread.
+     *
+     * @return the oldest event or null if there is none (or its producer did not finish publishing yet)
+     */
+    public LogEvent poll() {
+        long head = mHead.get();
+        int index = (int) head & mMask;
+        LogEvent event = mSlots.get(index);
+        if (event == null) {
+            return null;
+        }
+        mSlots.set(index, null);
+        mHead.lazySet(head + 1);
+        return event;
+    }
+
+    public long getDropped() {
+        return mDropped.get();
+    }
+
+    /**
+     * @param _consumer woken whenever an event goes into the empty buffer
+     */
+    public void setConsumer(Thread _consumer) {
+        mConsumer = _consumer;
+    }
+}
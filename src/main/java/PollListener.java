@@ -0,0 +1,11 @@
+/**
+ * Notified by {@link ProximityPoller} about every check.
+ */
+public interface PollListener {
+
+    void onCheck(DaemonEndpoint _endpoint, CheckResult _result, long _latencyMillis);
+
+    void onLock(long _time);
+
+    void onDeactivated(long _time);
+}
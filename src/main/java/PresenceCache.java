@@ -0,0 +1,123 @@
+/**
+ * Keeps the result of the latest check so local consumers can read it without asking the daemon.
+ * <p>
+ * Reads are a volatile access and a clock read. Consumers waiting for changes are woken when the state changes,
+ * not on every check. PRESENT or ABSENT turn into UNKNOWN once no check succeeded for twice the interval
+ * (or the daemon's pacing hint plus one interval, if that is longer), e.g. while the daemon is busy or unreachable.
+ */
+public class PresenceCache implements PollListener {
+
+    private final Clock mClock;
+    private final Object mChangeLock = new Object();
+
+    private volatile PresenceState mState;
+    private volatile long mStaleAt = Long.MAX_VALUE;
+    private long mIntervalMillis = 15000;
+
+    public PresenceCache(Clock _clock) {
+        mClock = _clock;
+        mState = new PresenceState(PresenceState.State.UNKNOWN, 0, _clock.currentTimeMillis(), 0);
+    }
+
+    public PresenceState get() {
+        expireStale();
+        return mState;
+    }
+
+    /**
+     * Blocks until the sequence moves past the given one or the timeout elapsed.
+     *
+     * @return the current state, which equals the old one on timeout
+     */
+    public PresenceState awaitChange(long _sequence, long _timeoutMillis) throws InterruptedException {
+        long deadline = getClock().currentTimeMillis() + _timeoutMillis;
+        synchronized (mChangeLock) {
+            long now = getClock().currentTimeMillis();
+            while (expireStale(now) <= _sequence && now < deadline) {
+                // wake up in time to turn a state stale without a check; no deadline is armed once it is stale
+                mChangeLock.wait(Math.max(1, Math.min(deadline, mStaleAt) - now));
+                now = getClock().currentTimeMillis();
+            }
+            return mState;
+        }
+    }
+
+    private long expireStale() {
+        return expireStale(getClock().currentTimeMillis());
+    }
+
+    // publishes UNKNOWN if the last successful check is too old, returns the current sequence
+    private long expireStale(long _now) {
+        if (_now >= mStaleAt) {
+            synchronized (mChangeLock) {
+                // a check may have come in meanwhile
+                if (_now >= mStaleAt) {
+                    // keep the time of the last check, so ageMillis tells how old the last answer is
+                    publish(PresenceState.State.UNKNOWN, mState.getCheckedAt(), Long.MAX_VALUE);
+                }
+            }
+        }
+        return mState.getSequence();
+    }
+
+    // the stale time goes with the state, so a concurrent expiry can't disarm the deadline of a newer check
+    private void publish(PresenceState.State _state, long _checkedAt, long _staleAt) {
+        long now = getClock().currentTimeMillis();
+        synchronized (mChangeLock) {
+            PresenceState current = mState;
+            mStaleAt = _staleAt;
+            if (current.getState() == _state) {
+                mState = new PresenceState(_state, _checkedAt, current.getChangedAt(), current.getSequence());
+                return;
+            }
+            mState = new PresenceState(_state, _checkedAt, now, current.getSequence() + 1);
+            mChangeLock.notifyAll();
+        }
+    }
+
+    private void publishChecked(PresenceState.State _state, CheckResult _result) {
+        long now = getClock().currentTimeMillis();
+        long validFor = Math.max(2 * getIntervalMillis(),
+                _result.hasNextPollHint() ? _result.getNextPollMillis() + getIntervalMillis() : 0);
+        publish(_state, now, now + validFor);
+    }
+
+    // PollListener
+    public void onCheck(DaemonEndpoint _endpoint, CheckResult _result, long _latencyMillis) {
+        switch (_result.getStatus()) {
+            case PRESENT:
+                publishChecked(PresenceState.State.PRESENT, _result);
+                break;
+            case ABSENT:
+            case INVALID_KEY:
+                publishChecked(PresenceState.State.ABSENT, _result);
+                break;
+            default:
+                // keep the last state until it is stale, failover or deactivation may follow
+                expireStale();
+                break;
+        }
+    }
+
+    public void onLock(long _time) {
+    }
+
+    public void onDeactivated(long _time) {
+        publish(PresenceState.State.INACTIVE, getClock().currentTimeMillis(), Long.MAX_VALUE);
+    }
+
+    private Clock getClock() {
+        return mClock;
+    }
+
+    private long getIntervalMillis() {
+        return mIntervalMillis;
+    }
+
+    /**
+     * The poll interval, a state older than twice of it is no longer reported.
+     */
+    public void setIntervalMillis(long _intervalMillis) {
+        mIntervalMillis = _intervalMillis;
+    }
+}
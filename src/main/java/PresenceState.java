@@ -0,0 +1,51 @@
+/**
+ * Immutable snapshot of the last known presence, published by {@link PresenceCache}.
+ */
+public class PresenceState {
+
+    public enum State {
+        UNKNOWN,    // no answer from any daemon yet, or the last one is too old
+        PRESENT,
+        ABSENT,
+        INACTIVE    // client is deactivated, nobody checks
+    }
+
+    private final State mState;
+    private final long mCheckedAt;
+    private final long mChangedAt;
+    private final long mSequence;
+
+    public PresenceState(State _state, long _checkedAt, long _changedAt, long _sequence) {
+        mState = _state;
+        mCheckedAt = _checkedAt;
+        mChangedAt = _changedAt;
+        mSequence = _sequence;
+    }
+
+    public String toJson(long _now) {
+        return "{\"state\":\"" + getState() + "\""
+                + ",\"ageMillis\":" + (getCheckedAt() > 0 ? _now - getCheckedAt() : -1)
+                + ",\"changedAt\":" + getChangedAt()
+                + ",\"sequence\":" + getSequence() + "}";
+    }
+
+    // Getters
+    public State getState() {
+        return mState;
+    }
+
+    public long getCheckedAt() {
+        return mCheckedAt;
+    }
+
+    public long getChangedAt() {
+        return mChangedAt;
+    }
+
+    /**
+     * @return number of state changes so far
+     */
+    public long getSequence() {
+        return mSequence;
+    }
+}
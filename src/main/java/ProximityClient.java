@@ -0,0 +1,262 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Sets up discovery, transport, poller and the local presence server from the client settings and runs them.
+ * Shared by the tray client ({@link BTClient}) and {@link HeadlessClient}, it never touches AWT or Swing.
+ */
+public class ProximityClient {
+
+    // written by the GUI, read by the headless client
+    public static final String PROPERTIES_PATH_NAME = "config.winBTProxmityClient";
+
+    // a daemon must not be able to make us check more often than this, in seconds
+    private static final int MIN_POLL_INTERVAL = 1;
+
+    private final Clock mClock = new SystemClock();
+    private final DaemonDiscovery mDiscovery = new DaemonDiscovery(mClock);
+    private final PresenceCache mPresenceCache = new PresenceCache(mClock);
+    private final LocalPresenceServer mPresenceServer = new LocalPresenceServer(mPresenceCache, mClock);
+    private final ScreenLocker mLocker;
+    private final List<PollListener> mListeners = new ArrayList<>();
+
+    private int mTimeInterval;
+    private int mMinPollInterval;
+    private int mMaxPollInterval;
+    private DaemonEndpoint mEndpoint;
+    private boolean mDiscoveryEnabled;
+    private int mPresencePort;
+    private int level;
+    private String hmac;
+    private X509Certificate mBTx509Cert;
+
+    private DaemonTransport mTransport;
+    private volatile ProximityPoller mPoller;
+
+    public ProximityClient(ScreenLocker _locker) {
+        mLocker = _locker;
+    }
+
+    /**
+     * Takes the settings from the properties file the GUI writes, with the GUI's defaults.
+     *
+     * @return false if a number can't be parsed or the daemon address or its certificate is missing or invalid
+     */
+    public boolean configure(Properties _properties) {
+        try {
+            setLevel(Integer.parseInt(_properties.getProperty("level", "1")));
+            setTimeInterval(Integer.parseInt(_properties.getProperty("timeInterval", "15")));
+            setPollIntervalBounds(Integer.parseInt(_properties.getProperty("minPollInterval", "1")),
+                    Integer.parseInt(_properties.getProperty("maxPollInterval", "0")));
+            setPresencePort(Integer.parseInt(_properties.getProperty("presencePort", String.valueOf(LocalPresenceServer.DEFAULT_PORT))));
+        } catch (NumberFormatException e) {
+            Log.error("config", "not a number: " + e.getMessage());
+            return false;
+        }
+        setHMAC(_properties.getProperty("hmac", "-1"));
+        setDiscoveryEnabled(Boolean.parseBoolean(_properties.getProperty("discovery", "true")));
+
+        String ip = _properties.getProperty("ip");
+        String port = _properties.getProperty("port");
+        if (ip == null || port == null) {
+            Log.error("config", "no daemon address");
+            return false;
+        }
+        return setHostURL(ip + ":" + port) && loadDaemonCert(_properties.getProperty("pemLocation"));
+    }
+
+    /**
+     * Polls until deactivated, blocking the calling thread.
+     */
+    public void run() {
+        if (isDiscoveryEnabled()) {
+            getDiscovery().start();
+        }
+
+        HttpsDaemonTransport transport = new HttpsDaemonTransport(mBTx509Cert, getDiscovery(), getClock());
+        transport.setLevel(getLevel());
+        transport.setHMAC(getHMAC());
+        transport.setPollInterval((long) getTimeInterval() * 1000);
+        setTransport(transport);
+
+        getPresenceCache().setIntervalMillis((long) getTimeInterval() * 1000);
+        if (getPresencePort() > 0) {
+            getPresenceServer().start(getPresencePort());
+        }
+
+        ProximityPoller poller = new ProximityPoller(getClock(), transport, mLocker, getDiscovery());
+        poller.setIntervalMillis((long) getTimeInterval() * 1000);
+        int minPollInterval = Math.max(MIN_POLL_INTERVAL, getMinPollInterval());
+        // without an explicit maximum the daemon may slow us down to four times the configured interval
+        int maxPollInterval = getMaxPollInterval() > 0 ? getMaxPollInterval() : 4 * getTimeInterval();
+        maxPollInterval = Math.max(maxPollInterval, Math.max(minPollInterval, getTimeInterval()));
+        if (minPollInterval != getMinPollInterval() || (getMaxPollInterval() > 0 && maxPollInterval != getMaxPollInterval())) {
+            Log.warn("poll.bounds", "using " + minPollInterval + "-" + maxPollInterval + " s instead of "
+                    + getMinPollInterval() + "-" + getMaxPollInterval() + " s");
+        }
+        poller.setPacingBounds((long) minPollInterval * 1000, (long) maxPollInterval * 1000);
+        poller.setEndpoint(getEndpoint());
+        poller.addListener(getPresenceCache());
+        for (PollListener listener : mListeners) {
+            poller.addListener(listener);
+        }
+        setPoller(poller);
+
+        poller.run();
+        // also reached when deactivated from outside
+        getPresenceCache().onDeactivated(getClock().currentTimeMillis());
+
+        getDiscovery().stop();
+    }
+
+    /**
+     * Ends {@link #run()} after the current check.
+     */
+    public void deactivate() {
+        if (getPoller() != null) {
+            getPoller().setActivated(false);
+        }
+    }
+
+    public boolean loadDaemonCert(String _path) {
+        Log.info("cert.load", _path);
+        if (_path == null) {
+            return false;
+        }
+        try (FileInputStream fileIn = new FileInputStream(new File(_path))) {
+            CertificateFactory certFactory = CertificateFactory.getInstance("X.509");
+            mBTx509Cert = (X509Certificate) certFactory.generateCertificate(fileIn);
+            getDiscovery().setPinnedCertificate(mBTx509Cert);
+            return true;
+        } catch (IOException e) {
+            Log.error("cert.load", "can't read " + _path, e);
+        } catch (CertificateException e) {
+            // Parsing error while reading key
+            Log.error("cert.load", "can't parse " + _path, e);
+        }
+        return false;
+    }
+
+    public void disconnect() {
+        if (getTransport() != null) {
+            getTransport().disconnect();
+        }
+    }
+
+    public void addListener(PollListener _listener) {
+        mListeners.add(_listener);
+    }
+
+    // Getters & Setters
+    private int getTimeInterval() {
+        return mTimeInterval;
+    }
+
+    public void setTimeInterval(int _time) {
+        mTimeInterval = _time;
+    }
+
+    private int getMinPollInterval() {
+        return mMinPollInterval;
+    }
+
+    private int getMaxPollInterval() {
+        return mMaxPollInterval;
+    }
+
+    /**
+     * Bounds in seconds for the pacing hints of the daemon, a maximum of 0 means four times the time interval.
+     * When polling starts the minimum is raised to one second and the maximum to the minimum and the time interval.
+     */
+    public void setPollIntervalBounds(int _min, int _max) {
+        mMinPollInterval = _min;
+        mMaxPollInterval = _max;
+    }
+
+    /**
+     * @return false if the address can't be parsed
+     */
+    public boolean setHostURL(String _url) {
+        DaemonEndpoint configured = DaemonEndpoint.parse(_url, true);
+        if (configured == null) {
+            return false;
+        }
+        mEndpoint = getDiscovery().addStaticEndpoint(configured);
+        return true;
+    }
+
+    private DaemonEndpoint getEndpoint() {
+        return mEndpoint;
+    }
+
+    private boolean isDiscoveryEnabled() {
+        return mDiscoveryEnabled;
+    }
+
+    public void setDiscoveryEnabled(boolean _enabled) {
+        mDiscoveryEnabled = _enabled;
+    }
+
+    private int getPresencePort() {
+        return mPresencePort;
+    }
+
+    public void setPresencePort(int _port) {
+        mPresencePort = _port;
+    }
+
+    private int getLevel() {
+        return level;
+    }
+
+    public void setLevel(int _level) {
+        level = _level;
+    }
+
+    private String getHMAC() {
+        return hmac;
+    }
+
+    public void setHMAC(String _hmac) {
+        hmac = _hmac;
+    }
+
+    private Clock getClock() {
+        return mClock;
+    }
+
+    private DaemonDiscovery getDiscovery() {
+        return mDiscovery;
+    }
+
+    private PresenceCache getPresenceCache() {
+        return mPresenceCache;
+    }
+
+    private LocalPresenceServer getPresenceServer() {
+        return mPresenceServer;
+    }
+
+    private DaemonTransport getTransport() {
+        return mTransport;
+    }
+
+    private void setTransport(DaemonTransport _transport) {
+        mTransport = _transport;
+    }
+
+    private ProximityPoller getPoller() {
+        return mPoller;
+    }
+
+    private void setPoller(ProximityPoller _poller) {
+        mPoller = _poller;
+    }
+}
@@ -0,0 +1,193 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The polling loop of the client: checks the daemon every interval, locks the screen if the token is gone
+ * and fails over to the next live endpoint if the daemon can't be reached.
+ * <p>
+ * Time, transport and lock action are injected so the loop can be replayed against a virtual clock
+ * (see PollSimulation in src/test/java).
+ */
+public class ProximityPoller {
+
+    // each attempt may take up to the transport timeout, so only a few other endpoints are tried per poll
+    private static final int MAX_FAILOVER_ATTEMPTS = 2;
+
+    private final Clock mClock;
+    private final DaemonTransport mTransport;
+    private final ScreenLocker mLocker;
+    private final DaemonDiscovery mDiscovery;
+    private final List<PollListener> mListeners = new ArrayList<>();
+
+    private volatile boolean mActivated;
+    private long mIntervalMillis;
+    private long mMinIntervalMillis;
+    private long mMaxIntervalMillis = Long.MAX_VALUE;
+    private DaemonEndpoint mEndpoint;
+
+    public ProximityPoller(Clock _clock, DaemonTransport _transport, ScreenLocker _locker, DaemonDiscovery _discovery) {
+        mClock = _clock;
+        mTransport = _transport;
+        mLocker = _locker;
+        mDiscovery = _discovery;
+    }
+
+    /**
+     * Polls until deactivated, blocking the calling thread.
+     */
+    public void run() {
+        setActivated(true);
+        while (isActivated()) {
+            try {
+                CheckResult result = pollOnce();
+                if (isActivated()) {
+                    getClock().sleep(nextDelay(result));
+                }
+            } catch (InterruptedException e) {
+                Log.error("poll.interrupted", "activated: " + isActivated(), e);
+                deactivate();
+            }
+        }
+    }
+
+    /**
+     * The daemon may ask for an earlier or later check (X-Next-Poll-In, Retry-After), the hint is
+     * clamped to the pacing bounds so a daemon can neither flood nor silence the client.
+     */
+    long nextDelay(CheckResult _result) {
+        if (_result == null || !_result.hasNextPollHint()) {
+            return getIntervalMillis();
+        }
+        return Math.min(getMaxIntervalMillis(), Math.max(getMinIntervalMillis(), _result.getNextPollMillis()));
+    }
+
+    // one check; if the daemon is unreachable every other live endpoint is tried before giving up
+    CheckResult pollOnce() {
+        CheckResult result = null;
+        int attempts = 1 + Math.min(MAX_FAILOVER_ATTEMPTS, getDiscovery().getLiveCount(getClock().currentTimeMillis()));
+        for (int i = 0; i < attempts && isActivated(); i++) {
+            long started = getClock().currentTimeMillis();
+            result = getTransport().check(getEndpoint());
+            long latency = getClock().currentTimeMillis() - started;
+            if (Log.isEnabled(Log.Level.INFO)) {
+                Log.log(Log.Level.INFO, "poll.check", result + " " + getEndpoint(), latency, null);
+            }
+            for (PollListener listener : mListeners) {
+                listener.onCheck(getEndpoint(), result, latency);
+            }
+
+            switch (result.getStatus()) {
+                case PRESENT:
+                case NO_ANSWER:
+                case BUSY:
+                    return result;
+                case ABSENT:
+                    lock();
+                    return result;
+                case UNREACHABLE:
+                    if (failover()) {
+                        continue;
+                    }
+                    deactivate();
+                    return result;
+                case INVALID_KEY:
+                    Log.error("poll.invalidKey", "connection will be terminated");
+                    lock();
+                    deactivate();
+                    return result;
+                case FAILED:
+                    deactivate();
+                    return result;
+            }
+        }
+        return result;
+    }
+
+    // switch to the next live endpoint of the discovery table
+    private boolean failover() {
+        DaemonEndpoint next = getDiscovery().failover(getEndpoint(), getClock().currentTimeMillis());
+        if (next == null || (getEndpoint() != null && next.getKey().equals(getEndpoint().getKey()))) {
+            return false;
+        }
+        if (Log.isEnabled(Log.Level.WARN)) {
+            Log.warn("poll.failover", getEndpoint() + " -> " + next);
+        }
+        setEndpoint(next);
+        return true;
+    }
+
+    private void lock() {
+        getLocker().lock();
+        for (PollListener listener : mListeners) {
+            listener.onLock(getClock().currentTimeMillis());
+        }
+    }
+
+    private void deactivate() {
+        setActivated(false);
+        for (PollListener listener : mListeners) {
+            listener.onDeactivated(getClock().currentTimeMillis());
+        }
+    }
+
+    public void addListener(PollListener _listener) {
+        mListeners.add(_listener);
+    }
+
+    // Getters & Setters
+    public boolean isActivated() {
+        return mActivated;
+    }
+
+    public void setActivated(boolean _activated) {
+        mActivated = _activated;
+    }
+
+    private long getIntervalMillis() {
+        return mIntervalMillis;
+    }
+
+    public void setIntervalMillis(long _intervalMillis) {
+        mIntervalMillis = _intervalMillis;
+    }
+
+    private long getMinIntervalMillis() {
+        return mMinIntervalMillis;
+    }
+
+    private long getMaxIntervalMillis() {
+        return mMaxIntervalMillis;
+    }
+
+    /**
+     * Bounds for daemon pacing hints; without them hints are taken as they are.
+     */
+    public void setPacingBounds(long _minMillis, long _maxMillis) {
+        mMinIntervalMillis = _minMillis;
+        mMaxIntervalMillis = _maxMillis;
+    }
+
+    public DaemonEndpoint getEndpoint() {
+        return mEndpoint;
+    }
+
+    public void setEndpoint(DaemonEndpoint _endpoint) {
+        mEndpoint = _endpoint;
+    }
+
+    private Clock getClock() {
+        return mClock;
+    }
+
+    private DaemonTransport getTransport() {
+        return mTransport;
+    }
+
+    private ScreenLocker getLocker() {
+        return mLocker;
+    }
+
+    private DaemonDiscovery getDiscovery() {
+        return mDiscovery;
+    }
+}
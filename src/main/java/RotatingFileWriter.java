@@ -0,0 +1,82 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Appends to a log file and rotates it once it reaches the size cap: name.log, name.log.1 ... name.log.n.
+ * Not thread safe, used by the log writer thread only.
+ */
+public class RotatingFileWriter {
+
+    private final File mFile;
+    private final long mMaxBytes;
+    private final int mMaxFiles;
+
+    private Writer mWriter;
+    private long mSize;
+
+    public RotatingFileWriter(File _file, long _maxBytes, int _maxFiles) {
+        mFile = _file;
+        mMaxBytes = _maxBytes;
+        mMaxFiles = _maxFiles;
+    }
+
+    public void write(String _line) throws IOException {
+        if (mWriter == null) {
+            open();
+        }
+        byte[] bytes = _line.getBytes(StandardCharsets.UTF_8);
+        if (mSize > 0 && mSize + bytes.length > mMaxBytes) {
+            rotate();
+        }
+        mWriter.write(_line);
+        mSize += bytes.length;
+    }
+
+    public void flush() throws IOException {
+        if (mWriter != null) {
+            mWriter.flush();
+        }
+    }
+
+    public void close() {
+        if (mWriter != null) {
+            try {
+                mWriter.close();
+            } catch (IOException e) {
+                // nothing left to report to
+            }
+            mWriter = null;
+        }
+    }
+
+    private void open() throws IOException {
+        File dir = mFile.getAbsoluteFile().getParentFile();
+        if (dir != null && !dir.exists() && !dir.mkdirs()) {
+            throw new IOException("can't create log directory " + dir);
+        }
+        mSize = mFile.length();
+        mWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(mFile, true), StandardCharsets.UTF_8));
+    }
+
+    private void rotate() throws IOException {
+        close();
+        File oldest = numbered(mMaxFiles);
+        if (oldest.exists() && !oldest.delete()) {
+            throw new IOException("can't delete " + oldest);
+        }
+        for (int i = mMaxFiles - 1; i >= 1; i--) {
+            File from = numbered(i);
+            if (from.exists() && !from.renameTo(numbered(i + 1))) {
+                throw new IOException("can't rename " + from);
+            }
+        }
+        if (mFile.exists() && !mFile.renameTo(numbered(1))) {
+            throw new IOException("can't rename " + mFile);
+        }
+        open();
+    }
+
+    private File numbered(int _index) {
+        return new File(mFile.getPath() + "." + _index);
+    }
+}
@@ -0,0 +1,7 @@
+/**
+ * Action executed when the daemon reports that the token is out of range.
+ */
+public interface ScreenLocker {
+
+    void lock();
+}
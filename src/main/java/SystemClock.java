@@ -0,0 +1,13 @@
+/**
+ * Wall-clock implementation of {@link Clock}.
+ */
+public class SystemClock implements Clock {
+
+    public long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    public void sleep(long _millis) throws InterruptedException {
+        Thread.sleep(_millis);
+    }
+}
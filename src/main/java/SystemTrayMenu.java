@@ -21,7 +21,7 @@ public class SystemTrayMenu implements ActionListener {
 
     private void initTrayMenu() {
         if (!SystemTray.isSupported()) {
-            System.out.println("System tray is not supported");
+            Log.error("tray.init", "system tray is not supported");
             System.exit(0);
             return;
         }
@@ -49,7 +49,7 @@ public class SystemTrayMenu implements ActionListener {
         try {
             systemTray.add(trayIcon);
         } catch (AWTException awtException) {
-            awtException.printStackTrace();
+            Log.error("tray.init", awtException.getMessage(), awtException);
         }
     }
 
@@ -0,0 +1,51 @@
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+
+/**
+ * Verifies a discovered daemon with a TLS handshake that trusts only the pinned certificate. The handshake
+ * proves possession of the private key, which a host repeating the announced fingerprint does not have.
+ */
+public class TlsEndpointVerifier implements EndpointVerifier {
+
+    // the verifier thread handles one endpoint after the other, a silent host must not hold up the rest
+    private static final int TIMEOUT_MILLIS = 2000;
+
+    public boolean verify(DaemonEndpoint _endpoint, X509Certificate _pinned) {
+        try {
+            KeyStore keystore = KeyStore.getInstance(KeyStore.getDefaultType());
+            keystore.load(null, null);
+            keystore.setCertificateEntry("BT Daemon", _pinned);
+
+            TrustManagerFactory tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+            tmf.init(keystore);
+
+            SSLContext sslCtx = SSLContext.getInstance("TLS");
+            sslCtx.init(null, tmf.getTrustManagers(), null);
+
+            try (Socket raw = new Socket()) {
+                raw.connect(new InetSocketAddress(_endpoint.getHost(), _endpoint.getPort()), TIMEOUT_MILLIS);
+                raw.setSoTimeout(TIMEOUT_MILLIS);
+                try (SSLSocket socket = (SSLSocket) sslCtx.getSocketFactory()
+                        .createSocket(raw, _endpoint.getHost(), _endpoint.getPort(), true)) {
+                    socket.startHandshake();
+                    Certificate[] chain = socket.getSession().getPeerCertificates();
+                    return chain.length > 0 && Arrays.equals(chain[0].getEncoded(), _pinned.getEncoded());
+                }
+            }
+        } catch (IOException | GeneralSecurityException e) {
+            if (Log.isEnabled(Log.Level.DEBUG)) {
+                Log.debug("discovery.verify", _endpoint + ": " + e.getMessage());
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,21 @@
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Locks the Windows workstation through user32.dll.
+ */
+public class WindowsScreenLocker implements ScreenLocker {
+
+    public void lock() {
+        try {
+            Log.info("screen.lock", "LockWorkStation");
+            // Execute Windows Screen Look
+            final String path = System.getenv("windir") + File.separator + "System32" + File.separator + "rundll32.exe";
+            Runtime runtime = Runtime.getRuntime();
+            Process pr = runtime.exec(path + " user32.dll,LockWorkStation");
+            pr.waitFor();
+        } catch (IOException | InterruptedException e) {
+            Log.error("screen.lock", e.getMessage(), e);
+        }
+    }
+}
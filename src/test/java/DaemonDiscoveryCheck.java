@@ -0,0 +1,158 @@
+import java.io.ByteArrayInputStream;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Checks that announcements repeating the pinned fingerprint don't make an endpoint live without verification,
+ * that forged entries can't crowd out a real daemon, and that a failed endpoint needs to be verified again.
+ * Runs on a {@link VirtualClock} with a verifier that accepts a fixed set of endpoints. Exit status 1 if a check fails.
+ * <pre>
+ * java DaemonDiscoveryCheck
+ * </pre>
+ */
+public class DaemonDiscoveryCheck {
+
+    // self-signed test certificate (keytool, EC), only its fingerprint matters here
+    private static final String CERT = "MIIBQTCB6KADAgECAgkAnRJfwNdpjBwwCgYIKoZIzj0EAwIwFDESMBAGA1UEAxMJbG9jYWxob3N0MCAXDTI2MTAxOTE5NDMz"
+            + "N1oYDzIxMjYwOTI1MTk0MzM3WjAUMRIwEAYDVQQDEwlsb2NhbGhvc3QwWTATBgcqhkjOPQIBBggqhkjOPQMBBwNCAATx8JF+"
+            + "eGmpaahzDS3xX9VMzQZiM+hViYvMN5dYCDku7282GEZva/Vl5YEmX4prqeA9ctCLmr0mlF2cLoJRpDA7oyEwHzAdBgNVHQ4E"
+            + "FgQUOJhizUF18kFS06VaEiG0eypeBH8wCgYIKoZIzj0EAwIDSAAwRQIgK8uhuOv6oXnUmx2NcbLenGaS+vJU0MfHOyAqjswG"
+            + "pCMCIQCjX1u3zbrFV6ebs8jaK8fYGWC2d9NCr7nAFWa0eck/ng==";
+
+    private final List<String> mFailures = new ArrayList<>();
+    private String mFingerprint;
+
+    public static void main(String[] args) throws Exception {
+        DaemonDiscoveryCheck check = new DaemonDiscoveryCheck();
+        check.forgedEndpointsStayOut();
+        check.failedEndpointIsVerifiedAgain();
+
+        for (String failure : check.mFailures) {
+            System.out.println("FAIL: " + failure);
+        }
+        if (!check.mFailures.isEmpty()) {
+            System.exit(1);
+        }
+        System.out.println("PASS");
+    }
+
+    // a host announcing 20 ports it can't verify neither gets live entries nor keeps the real daemon out of
+    // the table, not even when the forged announcements come from the daemon's address
+    private void forgedEndpointsStayOut() throws Exception {
+        VirtualClock clock = new VirtualClock(1000);
+        AcceptingVerifier verifier = new AcceptingVerifier("10.0.0.2:4567");
+        DaemonDiscovery discovery = newDiscovery(clock, verifier);
+        String announcement = announcement(4567);
+
+        for (int port = 5000; port < 5020; port++) {
+            discovery.handleAnnouncement("10.0.0.2", announcement(port), clock.currentTimeMillis());
+            verifier.awaitCalls(port - 4999);
+            clock.advance(1);
+        }
+        discovery.handleAnnouncement("10.0.0.2", announcement, clock.currentTimeMillis());
+        verifier.awaitCalls(21);
+
+        List<DaemonEndpoint> live = discovery.getLiveEndpoints(clock.currentTimeMillis());
+        expect(live.size() == 1 && live.get(0).getKey().equals("10.0.0.2:4567"), "live endpoints " + live);
+        expect(discovery.isKnownHost("10.0.0.2"), "verified host not known");
+
+        // entries announcing again are not verified again within the re-verify time, the last forged one is
+        // still in the table
+        int calls = verifier.getCalls();
+        clock.advance(DaemonDiscovery.ANNOUNCE_INTERVAL_MILLIS);
+        discovery.handleAnnouncement("10.0.0.2", announcement(5019), clock.currentTimeMillis());
+        discovery.handleAnnouncement("10.0.0.2", announcement, clock.currentTimeMillis());
+        Thread.sleep(50);
+        expect(verifier.getCalls() == calls, (verifier.getCalls() - calls) + " verifications within the re-verify time");
+        expect(discovery.getLiveCount(clock.currentTimeMillis()) == 1,
+                "live count " + discovery.getLiveCount(clock.currentTimeMillis()) + " after re-announcing");
+    }
+
+    // after a failure the next announcement alone does not make the endpoint live, a new verification does
+    private void failedEndpointIsVerifiedAgain() throws Exception {
+        VirtualClock clock = new VirtualClock(1000);
+        AcceptingVerifier verifier = new AcceptingVerifier("10.0.0.2:4567");
+        DaemonDiscovery discovery = newDiscovery(clock, verifier);
+        String announcement = announcement(4567);
+
+        discovery.handleAnnouncement("10.0.0.2", announcement, clock.currentTimeMillis());
+        verifier.awaitCalls(1);
+        DaemonEndpoint endpoint = discovery.getLiveEndpoints(clock.currentTimeMillis()).get(0);
+
+        clock.advance(1000);
+        discovery.failover(endpoint, clock.currentTimeMillis());
+        verifier.setAccepting(false);
+        clock.advance(20000);
+        discovery.handleAnnouncement("10.0.0.2", announcement, clock.currentTimeMillis());
+        verifier.awaitCalls(2);
+        expect(discovery.getLiveCount(clock.currentTimeMillis()) == 0, "failed endpoint live without verification");
+
+        verifier.setAccepting(true);
+        clock.advance(20000);
+        discovery.handleAnnouncement("10.0.0.2", announcement, clock.currentTimeMillis());
+        verifier.awaitCalls(3);
+        expect(discovery.getLiveCount(clock.currentTimeMillis()) == 1, "endpoint not live after verification");
+    }
+
+    private DaemonDiscovery newDiscovery(VirtualClock _clock, EndpointVerifier _verifier) throws Exception {
+        DaemonDiscovery discovery = new DaemonDiscovery(_clock, _verifier);
+        X509Certificate cert = (X509Certificate) CertificateFactory.getInstance("X.509")
+                .generateCertificate(new ByteArrayInputStream(Base64.getDecoder().decode(CERT)));
+        discovery.setPinnedCertificate(cert);
+        mFingerprint = DaemonDiscovery.fingerprint(cert);
+        return discovery;
+    }
+
+    private String announcement(int _port) {
+        return DaemonDiscovery.ANNOUNCE_PREFIX + " " + DaemonDiscovery.ANNOUNCE_VERSION + " " + _port + " " + mFingerprint;
+    }
+
+    private void expect(boolean _condition, String _failure) {
+        if (!_condition) {
+            mFailures.add(_failure);
+        }
+    }
+
+    private static class AcceptingVerifier implements EndpointVerifier {
+
+        private final Set<String> mAccepted = Collections.synchronizedSet(new HashSet<String>());
+        private volatile boolean mAccepting = true;
+        private int mCalls;
+
+        AcceptingVerifier(String... _accepted) {
+            Collections.addAll(mAccepted, _accepted);
+        }
+
+        public boolean verify(DaemonEndpoint _endpoint, X509Certificate _pinned) {
+            synchronized (this) {
+                mCalls++;
+                notifyAll();
+            }
+            return mAccepting && mAccepted.contains(_endpoint.getKey());
+        }
+
+        void setAccepting(boolean _accepting) {
+            mAccepting = _accepting;
+        }
+
+        synchronized int getCalls() {
+            return mCalls;
+        }
+
+        // verification runs on the discovery's verifier thread
+        synchronized void awaitCalls(int _calls) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 2000;
+            while (mCalls < _calls && System.currentTimeMillis() < deadline) {
+                wait(deadline - System.currentTimeMillis());
+            }
+            // the result is applied right after the call returned
+            Thread.sleep(20);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Checks how {@link HttpsDaemonTransport} reads the pacing headers of a daemon answer: Retry-After as delta-seconds
+ * or HTTP-date, Next-Poll-In, malformed, negative and NaN values and header names in any case.
+ * Exit status 1 if a check fails.
+ * <pre>
+ * java DaemonHeaderCheck
+ * </pre>
+ */
+public class DaemonHeaderCheck {
+
+    // Sun, 06 Nov 1994 08:49:37 GMT, the example date of RFC 9110
+    private static final long RFC_DATE = 784111777000L;
+
+    private final List<String> mFailures = new ArrayList<>();
+
+    public static void main(String[] args) {
+        DaemonHeaderCheck check = new DaemonHeaderCheck();
+        check.deltaSeconds();
+        check.httpDate();
+        check.invalidValues();
+        check.headerNames();
+        check.busyStatus();
+
+        for (String failure : check.mFailures) {
+            System.out.println("FAIL: " + failure);
+        }
+        if (!check.mFailures.isEmpty()) {
+            System.exit(1);
+        }
+        System.out.println("PASS");
+    }
+
+    private void deltaSeconds() {
+        expectRetryAfter("120", 0, 120000);
+        expectRetryAfter(" 5 ", 0, 5000);
+        expectRetryAfter("0", 0, 0);
+        expectRetryAfter("1.5", 0, 1500);
+        // delta-seconds don't depend on the time
+        expectRetryAfter("30", RFC_DATE, 30000);
+        expectSeconds("15", 15000);
+    }
+
+    private void httpDate() {
+        expectRetryAfter("Sun, 06 Nov 1994 08:49:37 GMT", RFC_DATE - 10000, 10000);
+        expectRetryAfter("Sun, 06 Nov 1994 08:49:37 GMT", RFC_DATE, 0);
+        // a date in the past means now
+        expectRetryAfter("Sun, 06 Nov 1994 08:49:37 GMT", RFC_DATE + 60000, 0);
+        // Next-Poll-In is only delta-seconds
+        expectSeconds("Sun, 06 Nov 1994 08:49:37 GMT", -1);
+    }
+
+    private void invalidValues() {
+        expectRetryAfter(null, 0, -1);
+        expectRetryAfter("", 0, -1);
+        expectRetryAfter("soon", 0, -1);
+        expectRetryAfter("-5", 0, -1);
+        expectRetryAfter("NaN", 0, -1);
+        expectRetryAfter("Infinity", 0, -1);
+        expectRetryAfter("Sun, 45 Nov 1994 08:49:37 GMT", 0, -1);
+        expectSeconds("-1", -1);
+        expectSeconds("NaN", -1);
+        expectSeconds("Infinity", -1);
+        expectSeconds("10s", -1);
+        expect(HttpsDaemonTransport.parseSeconds(null) == -1, "missing header is not -1");
+        expect(HttpsDaemonTransport.parseSeconds(new ArrayList<String>()) == -1, "empty header is not -1");
+    }
+
+    private void headerNames() {
+        Map<String, List<String>> headers = new HashMap<>();
+        // the status line is kept under a null key
+        headers.put(null, Arrays.asList("HTTP/1.1 503 Service Unavailable"));
+        headers.put("retry-after", Arrays.asList("7"));
+        headers.put("NEXT-POLL-IN", Arrays.asList("20"));
+        headers.put("FoundBt", Arrays.asList("true"));
+
+        expect(HttpsDaemonTransport.parseRetryAfter(HttpsDaemonTransport.getHeader(headers, "Retry-After"), 0) == 7000,
+                "lower case Retry-After not found");
+        expect(HttpsDaemonTransport.parseSeconds(HttpsDaemonTransport.getHeader(headers, "Next-Poll-In")) == 20000,
+                "upper case Next-Poll-In not found");
+        expect(Arrays.asList("true").equals(HttpsDaemonTransport.getHeader(headers, "foundBT")),
+                "mixed case foundBT not found");
+        expect(HttpsDaemonTransport.getHeader(headers, "Retry-Afte") == null, "prefix of a header name matched");
+    }
+
+    private void busyStatus() {
+        expect(HttpsDaemonTransport.isBusy(429), "429 is not busy");
+        expect(HttpsDaemonTransport.isBusy(503), "503 is not busy");
+        expect(!HttpsDaemonTransport.isBusy(200), "200 is busy");
+        expect(!HttpsDaemonTransport.isBusy(500), "500 is busy");
+    }
+
+    private void expectRetryAfter(String _value, long _now, long _expected) {
+        long millis = HttpsDaemonTransport.parseRetryAfter(_value == null ? null : Arrays.asList(_value), _now);
+        expect(millis == _expected, "Retry-After \"" + _value + "\" gives " + millis + " ms, expected " + _expected);
+    }
+
+    private void expectSeconds(String _value, long _expected) {
+        long millis = HttpsDaemonTransport.parseSeconds(Arrays.asList(_value));
+        expect(millis == _expected, "Next-Poll-In \"" + _value + "\" gives " + millis + " ms, expected " + _expected);
+    }
+
+    private void expect(boolean _condition, String _failure) {
+        if (!_condition) {
+            mFailures.add(_failure);
+        }
+    }
+}
@@ -0,0 +1,246 @@
+import java.util.*;
+
+/**
+ * Replays a randomly scripted week of daemon behaviour (token absences, latency spikes, overload periods
+ * with Retry-After, outages of the primary daemon) against {@link ProximityPoller} on a {@link VirtualClock}
+ * and reports poll counts and lock latencies. Runs in seconds, so timing changes can be checked before shipping.
+ * <p>
+ * The run fails (exit status 1) if a threshold is broken. Lock latency is checked as the client's share:
+ * the time from the token leaving to the lock, minus the time the daemon answered BUSY in between.
+ * Likewise only absences lasting at least one pacing step outside of BUSY windows count as missed.
+ * <pre>
+ * java PollSimulation [days] [interval seconds] [seed]
+ *                     [--max-missed n] [--max-p99-ms ms] [--max-lock-ms ms] [--min-polls n] [--max-polls n]
+ * </pre>
+ */
+public class PollSimulation implements PollListener {
+
+    private static final long MINUTE = 60 * 1000;
+    private static final long HOUR = 60 * MINUTE;
+    private static final long DAY = 24 * HOUR;
+
+    // base latency of a check and the longest scripted latency spike
+    private static final long BASE_LATENCY = 40;
+    private static final long MAX_SPIKE_LATENCY = 10000;
+
+    private final VirtualClock mClock;
+    private final ScriptedDaemonTransport mTransport;
+    private final long mEnd;
+
+    private ProximityPoller mPoller;
+    private final Map<CheckResult.Status, Integer> mResults = new EnumMap<>(CheckResult.Status.class);
+    private final Set<ScriptedDaemonTransport.Window> mLockedAbsences = new HashSet<>();
+    private final List<Long> mLockLatencies = new ArrayList<>();
+    private final List<Long> mClientLatencies = new ArrayList<>();
+    private int mPolls;
+    private int mLocks;
+    private long mDeactivatedAt = -1;
+
+    private PollSimulation(VirtualClock _clock, ScriptedDaemonTransport _transport, long _end) {
+        mClock = _clock;
+        mTransport = _transport;
+        mEnd = _end;
+    }
+
+    public static void main(String[] args) {
+        List<String> positional = new ArrayList<>();
+        Map<String, Long> limits = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].startsWith("--") && i + 1 < args.length) {
+                limits.put(args[i], Long.parseLong(args[++i]));
+            } else {
+                positional.add(args[i]);
+            }
+        }
+        int days = positional.size() > 0 ? Integer.parseInt(positional.get(0)) : 7;
+        int interval = positional.size() > 1 ? Integer.parseInt(positional.get(1)) : 15;
+        long seed = positional.size() > 2 ? Long.parseLong(positional.get(2)) : 42;
+
+        long intervalMillis = interval * 1000L;
+        long maxPacing = 4 * intervalMillis;
+        long expectedPolls = days * DAY / intervalMillis;
+
+        // defaults: every absence a client could have seen is locked, the client never waits longer than the widest pacing step plus
+        // a slow check (twice that for the worst case, a failover costs one more check), and pacing stays
+        // within what the bounds allow
+        long maxMissed = limit(limits, "--max-missed", 0);
+        long maxP99 = limit(limits, "--max-p99-ms", maxPacing + MAX_SPIKE_LATENCY);
+        long maxLock = limit(limits, "--max-lock-ms", 2 * (maxPacing + MAX_SPIKE_LATENCY));
+        long minPolls = limit(limits, "--min-polls", expectedPolls / 2);
+        long maxPolls = limit(limits, "--max-polls", expectedPolls + expectedPolls / 10);
+        if (!limits.isEmpty()) {
+            System.err.println("unknown options " + limits.keySet());
+            System.exit(2);
+        }
+
+        long wallStart = System.nanoTime();
+
+        VirtualClock clock = new VirtualClock(0);
+        ScriptedDaemonTransport transport = new ScriptedDaemonTransport(clock, BASE_LATENCY);
+        DaemonDiscovery discovery = new DaemonDiscovery(clock);
+        DaemonEndpoint primary = discovery.addStaticEndpoint(new DaemonEndpoint("10.0.0.1", 4567, true));
+        DaemonEndpoint secondary = discovery.addStaticEndpoint(new DaemonEndpoint("10.0.0.2", 4567, true));
+
+        long end = days * DAY;
+        script(transport, primary, secondary, end, new Random(seed));
+
+        PollSimulation simulation = new PollSimulation(clock, transport, end);
+        ProximityPoller poller = new ProximityPoller(clock, transport, new ScreenLocker() {
+            public void lock() {
+            }
+        }, discovery);
+        poller.setIntervalMillis(intervalMillis);
+        poller.setPacingBounds(1000, maxPacing);
+        poller.setEndpoint(primary);
+        poller.addListener(simulation);
+        simulation.mPoller = poller;
+
+        poller.run();
+
+        int[] missed = simulation.getMissedAbsences(maxPacing + MAX_SPIKE_LATENCY);
+        simulation.report(days, interval, missed, (System.nanoTime() - wallStart) / 1000000);
+
+        List<String> failures = new ArrayList<>();
+        if (missed[1] > maxMissed) {
+            failures.add("missed observable absences " + missed[1] + " > " + maxMissed);
+        }
+        if (!simulation.mClientLatencies.isEmpty()) {
+            long p99 = percentile(simulation.mClientLatencies, 0.99);
+            long max = percentile(simulation.mClientLatencies, 1.0);
+            if (p99 > maxP99) {
+                failures.add("client lock latency p99 " + p99 + " ms > " + maxP99 + " ms");
+            }
+            if (max > maxLock) {
+                failures.add("client lock latency max " + max + " ms > " + maxLock + " ms");
+            }
+        }
+        if (simulation.mPolls < minPolls || simulation.mPolls > maxPolls) {
+            failures.add("polls " + simulation.mPolls + " outside [" + minPolls + ", " + maxPolls + "]");
+        }
+        if (simulation.mDeactivatedAt >= 0) {
+            failures.add("client deactivated itself");
+        }
+
+        for (String failure : failures) {
+            System.out.println("FAIL: " + failure);
+        }
+        if (!failures.isEmpty()) {
+            System.exit(1);
+        }
+        System.out.println("PASS");
+    }
+
+    private static long limit(Map<String, Long> _limits, String _name, long _default) {
+        Long value = _limits.remove(_name);
+        return value != null ? value : _default;
+    }
+
+    // absences every ~45 minutes, a latency spike and an overload every ~3 hours and a primary outage every ~day
+    private static void script(ScriptedDaemonTransport _transport, DaemonEndpoint _primary, DaemonEndpoint _secondary,
+                               long _end, Random _random) {
+        long t = 0;
+        while (t < _end) {
+            t += exponential(_random, 45 * MINUTE);
+            long duration = 30 * 1000 + exponential(_random, 10 * MINUTE);
+            _transport.addAbsence(t, t + duration);
+            t += duration;
+        }
+
+        t = 0;
+        while (t < _end) {
+            t += exponential(_random, 3 * HOUR);
+            long spike = 2000 + _random.nextInt((int) (MAX_SPIKE_LATENCY - 2000));
+            _transport.addLatencySpike(t, t + 2 * MINUTE + exponential(_random, 5 * MINUTE), spike);
+        }
+
+        t = 0;
+        while (t < _end) {
+            t += exponential(_random, 3 * HOUR);
+            _transport.addBusy(t, t + exponential(_random, 5 * MINUTE), 30 * 1000 + _random.nextInt(90 * 1000));
+        }
+
+        t = 0;
+        while (t < _end) {
+            t += exponential(_random, DAY);
+            _transport.addOutage(_primary, t, t + 5 * MINUTE + exponential(_random, 20 * MINUTE));
+        }
+        // the secondary goes down once, while the primary is up
+        _transport.addOutage(_secondary, _end / 2, _end / 2 + 10 * MINUTE);
+    }
+
+    private static long exponential(Random _random, long _mean) {
+        return (long) (-Math.log(1 - _random.nextDouble()) * _mean);
+    }
+
+    private static long percentile(List<Long> _values, double _fraction) {
+        List<Long> sorted = new ArrayList<>(_values);
+        Collections.sort(sorted);
+        return sorted.get(Math.max(0, (int) Math.ceil(sorted.size() * _fraction) - 1));
+    }
+
+    /**
+     * @param _observable absences with less time outside of BUSY windows could not be seen by any client
+     * @return absences that were not locked, all of them and the observable ones
+     */
+    private int[] getMissedAbsences(long _observable) {
+        int[] missed = new int[2];
+        for (ScriptedDaemonTransport.Window absence : mTransport.getAbsences()) {
+            if (absence.getStart() >= mClock.currentTimeMillis() || mLockedAbsences.contains(absence)) {
+                continue;
+            }
+            missed[0]++;
+            long length = absence.getEnd() - absence.getStart();
+            if (length - mTransport.getBusyMillis(absence.getStart(), absence.getEnd()) >= _observable) {
+                missed[1]++;
+            }
+        }
+        return missed;
+    }
+
+    // PollListener
+    public void onCheck(DaemonEndpoint _endpoint, CheckResult _result, long _latencyMillis) {
+        mPolls++;
+        Integer count = mResults.get(_result.getStatus());
+        mResults.put(_result.getStatus(), count == null ? 1 : count + 1);
+        if (mClock.currentTimeMillis() >= mEnd) {
+            mPoller.setActivated(false);
+        }
+    }
+
+    public void onLock(long _time) {
+        mLocks++;
+        ScriptedDaemonTransport.Window absence = mTransport.getLastAbsence();
+        if (absence != null && mLockedAbsences.add(absence)) {
+            long latency = _time - absence.getStart();
+            mLockLatencies.add(latency);
+            mClientLatencies.add(latency - mTransport.getBusyMillis(absence.getStart(), _time));
+        }
+    }
+
+    public void onDeactivated(long _time) {
+        mDeactivatedAt = _time;
+    }
+
+    private void report(int _days, int _interval, int[] _missed, long _wallMillis) {
+        System.out.println("simulated " + _days + " days with " + _interval + "s interval in " + _wallMillis + " ms");
+        System.out.println("polls:    " + mPolls + " " + mResults);
+        System.out.println("locks:    " + mLocks);
+        System.out.println("absences: not locked " + _missed[0] + ", of them observable " + _missed[1]);
+
+        if (!mLockLatencies.isEmpty()) {
+            long sum = 0;
+            for (long latency : mLockLatencies) {
+                sum += latency;
+            }
+            System.out.println("lock latency ms: min " + percentile(mLockLatencies, 0)
+                    + ", avg " + (sum / mLockLatencies.size())
+                    + ", p99 " + percentile(mLockLatencies, 0.99)
+                    + ", max " + percentile(mLockLatencies, 1.0));
+            System.out.println("client share ms: p99 " + percentile(mClientLatencies, 0.99)
+                    + ", max " + percentile(mClientLatencies, 1.0));
+        }
+        if (mDeactivatedAt >= 0) {
+            System.out.println("client deactivated itself at " + (mDeactivatedAt / 1000) + "s");
+        }
+    }
+}
@@ -0,0 +1,108 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Checks that a cached state turns UNKNOWN without a check once it is stale, that a waiting subscriber is woken
+ * for that, and that waiting on a stale state does not spin. Uses the real time, runs about a second.
+ * Exit status 1 if a check fails.
+ * <pre>
+ * java PresenceCacheCheck
+ * </pre>
+ */
+public class PresenceCacheCheck {
+
+    // a wait on a stale state may wake up a few times, not once per millisecond
+    private static final long MAX_CLOCK_READS = 20;
+
+    private final List<String> mFailures = new ArrayList<>();
+
+    public static void main(String[] args) throws InterruptedException {
+        PresenceCacheCheck check = new PresenceCacheCheck();
+        check.staleWakesSubscriber();
+        check.staleWaitDoesNotSpin();
+        check.checkRenewsState();
+
+        for (String failure : check.mFailures) {
+            System.out.println("FAIL: " + failure);
+        }
+        if (!check.mFailures.isEmpty()) {
+            System.exit(1);
+        }
+        System.out.println("PASS");
+    }
+
+    // PRESENT with a 100 ms interval is stale after 200 ms, a subscriber waiting 2 s sees UNKNOWN then
+    private void staleWakesSubscriber() throws InterruptedException {
+        CountingClock clock = new CountingClock();
+        PresenceCache cache = new PresenceCache(clock);
+        cache.setIntervalMillis(100);
+        cache.onCheck(null, new CheckResult(CheckResult.Status.PRESENT), 0);
+        PresenceState present = cache.get();
+        expect(present.getState() == PresenceState.State.PRESENT, "fresh check is " + present.getState());
+
+        long started = System.currentTimeMillis();
+        PresenceState state = cache.awaitChange(present.getSequence(), 2000);
+        long waited = System.currentTimeMillis() - started;
+        expect(state.getState() == PresenceState.State.UNKNOWN, "stale state is " + state.getState());
+        expect(waited >= 150 && waited < 1000, "subscriber woken after " + waited + " ms, expected ~200 ms");
+        expect(state.getCheckedAt() == present.getCheckedAt(), "stale state lost the time of the last check");
+    }
+
+    // once UNKNOWN, nothing is due until the next check: waiting must not wake every millisecond
+    private void staleWaitDoesNotSpin() throws InterruptedException {
+        CountingClock clock = new CountingClock();
+        PresenceCache cache = new PresenceCache(clock);
+        cache.setIntervalMillis(10);
+        cache.onCheck(null, new CheckResult(CheckResult.Status.ABSENT), 0);
+        Thread.sleep(50);
+        // failed checks keep it UNKNOWN
+        cache.onCheck(null, new CheckResult(CheckResult.Status.BUSY, 1000), 0);
+        PresenceState unknown = cache.get();
+        expect(unknown.getState() == PresenceState.State.UNKNOWN, "stale state is " + unknown.getState());
+
+        long reads = clock.getReads();
+        long started = System.currentTimeMillis();
+        PresenceState state = cache.awaitChange(unknown.getSequence(), 500);
+        long waited = System.currentTimeMillis() - started;
+        reads = clock.getReads() - reads;
+        expect(state.getSequence() == unknown.getSequence(), "state changed while waiting: " + state.getState());
+        expect(waited >= 450, "wait returned after " + waited + " ms instead of 500 ms");
+        expect(reads <= MAX_CLOCK_READS, "waiting on a stale state read the clock " + reads + " times");
+    }
+
+    // a successful check after UNKNOWN publishes the new state and arms the stale time again
+    private void checkRenewsState() throws InterruptedException {
+        PresenceCache cache = new PresenceCache(new CountingClock());
+        cache.setIntervalMillis(50);
+        cache.onCheck(null, new CheckResult(CheckResult.Status.PRESENT), 0);
+        Thread.sleep(120);
+        expect(cache.get().getState() == PresenceState.State.UNKNOWN, "not stale after two intervals");
+
+        cache.onCheck(null, new CheckResult(CheckResult.Status.PRESENT), 0);
+        PresenceState renewed = cache.get();
+        expect(renewed.getState() == PresenceState.State.PRESENT, "check after UNKNOWN gives " + renewed.getState());
+        PresenceState state = cache.awaitChange(renewed.getSequence(), 1000);
+        expect(state.getState() == PresenceState.State.UNKNOWN, "renewed state never went stale");
+    }
+
+    private void expect(boolean _condition, String _failure) {
+        if (!_condition) {
+            mFailures.add(_failure);
+        }
+    }
+
+    private static class CountingClock extends SystemClock {
+
+        private final AtomicLong mReads = new AtomicLong();
+
+        public long currentTimeMillis() {
+            mReads.incrementAndGet();
+            return super.currentTimeMillis();
+        }
+
+        long getReads() {
+            return mReads.get();
+        }
+    }
+}
@@ -0,0 +1,147 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link DaemonTransport} replaying a script of token absences, latency spikes and daemon outages
+ * against a {@link VirtualClock}. Used by {@link PollSimulation}.
+ */
+public class ScriptedDaemonTransport implements DaemonTransport {
+
+    /**
+     * A span of virtual time [start, end) with an attached value (latency for spikes).
+     */
+    public static class Window {
+        private final long mStart;
+        private final long mEnd;
+        private final long mValue;
+
+        public Window(long _start, long _end, long _value) {
+            mStart = _start;
+            mEnd = _end;
+            mValue = _value;
+        }
+
+        public boolean contains(long _time) {
+            return _time >= mStart && _time < mEnd;
+        }
+
+        public long getStart() {
+            return mStart;
+        }
+
+        public long getEnd() {
+            return mEnd;
+        }
+
+        public long getValue() {
+            return mValue;
+        }
+    }
+
+    private final VirtualClock mClock;
+    private final long mBaseLatency;
+
+    private final List<Window> mAbsences = new ArrayList<>();
+    private final List<Window> mLatencySpikes = new ArrayList<>();
+    private final List<Window> mBusy = new ArrayList<>();
+    private final Map<String, List<Window>> mOutages = new HashMap<>();
+
+    private Window mLastAbsence;
+
+    public ScriptedDaemonTransport(VirtualClock _clock, long _baseLatency) {
+        mClock = _clock;
+        mBaseLatency = _baseLatency;
+    }
+
+    public void addAbsence(long _start, long _end) {
+        mAbsences.add(new Window(_start, _end, 0));
+    }
+
+    public void addLatencySpike(long _start, long _end, long _latency) {
+        mLatencySpikes.add(new Window(_start, _end, _latency));
+    }
+
+    /**
+     * The daemon answers BUSY with the given Retry-After during the window.
+     */
+    public void addBusy(long _start, long _end, long _retryAfter) {
+        mBusy.add(new Window(_start, _end, _retryAfter));
+    }
+
+    public void addOutage(DaemonEndpoint _endpoint, long _start, long _end) {
+        List<Window> outages = mOutages.get(_endpoint.getKey());
+        if (outages == null) {
+            outages = new ArrayList<>();
+            mOutages.put(_endpoint.getKey(), outages);
+        }
+        outages.add(new Window(_start, _end, 0));
+    }
+
+    public CheckResult check(DaemonEndpoint _endpoint) {
+        long started = mClock.currentTimeMillis();
+        mClock.advance(latencyAt(started));
+
+        if (find(mOutages.get(_endpoint.getKey()), started) != null) {
+            return new CheckResult(CheckResult.Status.UNREACHABLE);
+        }
+        Window busy = find(mBusy, started);
+        if (busy != null) {
+            return new CheckResult(CheckResult.Status.BUSY, busy.getValue());
+        }
+        Window absence = find(mAbsences, started);
+        if (absence != null) {
+            mLastAbsence = absence;
+            return new CheckResult(CheckResult.Status.ABSENT);
+        }
+        return new CheckResult(CheckResult.Status.PRESENT);
+    }
+
+    public void disconnect() {
+    }
+
+    /**
+     * @return how much of [_from, _to) the daemon spent answering BUSY, time no client could have checked in
+     */
+    public long getBusyMillis(long _from, long _to) {
+        long busy = 0;
+        for (Window window : mBusy) {
+            long start = Math.max(_from, window.getStart());
+            long end = Math.min(_to, window.getEnd());
+            if (end > start) {
+                busy += end - start;
+            }
+        }
+        return busy;
+    }
+
+    private long latencyAt(long _time) {
+        Window spike = find(mLatencySpikes, _time);
+        return spike != null ? spike.getValue() : mBaseLatency;
+    }
+
+    private static Window find(List<Window> _windows, long _time) {
+        if (_windows == null) {
+            return null;
+        }
+        for (Window window : _windows) {
+            if (window.contains(_time)) {
+                return window;
+            }
+        }
+        return null;
+    }
+
+    // Getters
+    public List<Window> getAbsences() {
+        return mAbsences;
+    }
+
+    /**
+     * @return the absence window which caused the latest ABSENT result
+     */
+    public Window getLastAbsence() {
+        return mLastAbsence;
+    }
+}
@@ -0,0 +1,131 @@
+import com.sun.net.httpserver.*;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+import java.util.Enumeration;
+
+/**
+ * Minimal stand-in for the proximity daemon to test discovery and failover locally.
+ * <p>
+ * Serves /checkForAuthToken over HTTPS and announces itself on the loopback interface.
+ * Start several instances on different ports and kill one to watch the client fail over.
+ * <p>
+ * To show daemon-driven pacing it answers 503 with Retry-After once more than [capacity] requests arrive
+ * within a second, and sends X-Next-Poll-In on normal answers if [nextPollIn] is given.
+ * <pre>
+ * keytool -genkeypair -alias daemon -keyalg RSA -dname CN=localhost -storetype PKCS12 -keystore daemon.p12 -storepass secret
+ * keytool -exportcert -rfc -alias daemon -keystore daemon.p12 -storepass secret -file daemon.pem
+ * java StandInDaemon daemon.p12 secret 4567 true 5 30
+ * </pre>
+ */
+public class StandInDaemon implements HttpHandler {
+
+    private final boolean mFoundBT;
+    private final int mCapacity;
+    private final int mNextPollIn;
+
+    private long mWindowStart;
+    private int mWindowRequests;
+
+    private StandInDaemon(boolean _foundBT, int _capacity, int _nextPollIn) {
+        mFoundBT = _foundBT;
+        mCapacity = _capacity;
+        mNextPollIn = _nextPollIn;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.out.println("usage: StandInDaemon <keystore.p12> <password> [port] [foundBT] [capacity] [nextPollIn]");
+            return;
+        }
+        String keystorePath = args[0];
+        char[] password = args[1].toCharArray();
+        int port = args.length > 2 ? Integer.parseInt(args[2]) : 4567;
+        boolean foundBT = args.length <= 3 || Boolean.parseBoolean(args[3]);
+        int capacity = args.length > 4 ? Integer.parseInt(args[4]) : Integer.MAX_VALUE;
+        int nextPollIn = args.length > 5 ? Integer.parseInt(args[5]) : -1;
+
+        KeyStore keystore = KeyStore.getInstance("PKCS12");
+        try (FileInputStream in = new FileInputStream(keystorePath)) {
+            keystore.load(in, password);
+        }
+        KeyManagerFactory kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        kmf.init(keystore, password);
+        SSLContext sslCtx = SSLContext.getInstance("TLS");
+        sslCtx.init(kmf.getKeyManagers(), null, null);
+
+        HttpsServer server = HttpsServer.create(new InetSocketAddress(port), 0);
+        server.setHttpsConfigurator(new HttpsConfigurator(sslCtx));
+        server.createContext("/checkForAuthToken", new StandInDaemon(foundBT, capacity, nextPollIn));
+        server.start();
+
+        String fingerprint = DaemonDiscovery.fingerprint(firstCertificate(keystore));
+        System.out.println("StandInDaemon listening on " + port + ", foundBT=" + foundBT + ", cert " + fingerprint);
+
+        announce(port, fingerprint);
+    }
+
+    private static X509Certificate firstCertificate(KeyStore _keystore) throws Exception {
+        Enumeration<String> aliases = _keystore.aliases();
+        while (aliases.hasMoreElements()) {
+            String alias = aliases.nextElement();
+            if (_keystore.isKeyEntry(alias)) {
+                return (X509Certificate) _keystore.getCertificate(alias);
+            }
+        }
+        throw new IllegalArgumentException("no key entry in keystore");
+    }
+
+    private static void announce(int _port, String _fingerprint) throws IOException, InterruptedException {
+        byte[] message = (DaemonDiscovery.ANNOUNCE_PREFIX + " " + DaemonDiscovery.ANNOUNCE_VERSION + " "
+                + _port + " " + _fingerprint).getBytes(StandardCharsets.US_ASCII);
+        InetAddress group = InetAddress.getByName(DaemonDiscovery.MULTICAST_GROUP);
+
+        try (MulticastSocket socket = new MulticastSocket()) {
+            socket.setNetworkInterface(NetworkInterface.getByInetAddress(InetAddress.getLoopbackAddress()));
+            socket.setTimeToLive(1);
+            while (true) {
+                socket.send(new DatagramPacket(message, message.length, group, DaemonDiscovery.MULTICAST_PORT));
+                Thread.sleep(DaemonDiscovery.ANNOUNCE_INTERVAL_MILLIS);
+            }
+        }
+    }
+
+    // requests within the current one second window, including this one
+    private synchronized int countRequest() {
+        long now = System.currentTimeMillis();
+        if (now - mWindowStart >= 1000) {
+            mWindowStart = now;
+            mWindowRequests = 0;
+        }
+        return ++mWindowRequests;
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        int load = countRequest();
+        if (load > mCapacity) {
+            // spread the overflow over the next seconds
+            int retryAfter = 1 + (load - mCapacity) / mCapacity;
+            System.out.println("overloaded (" + load + "/s), " + exchange.getRemoteAddress() + " retry after " + retryAfter + "s");
+            exchange.getResponseHeaders().add(HttpsDaemonTransport.HEADER_RETRY_AFTER, String.valueOf(retryAfter));
+            exchange.sendResponseHeaders(503, -1);
+            exchange.close();
+            return;
+        }
+
+        System.out.println("request " + exchange.getRequestURI() + " from " + exchange.getRemoteAddress());
+        exchange.getResponseHeaders().add("foundBT", String.valueOf(mFoundBT));
+        if (mNextPollIn >= 0) {
+            exchange.getResponseHeaders().add(HttpsDaemonTransport.HEADER_NEXT_POLL_IN, String.valueOf(mNextPollIn));
+        }
+        exchange.sendResponseHeaders(200, -1);
+        exchange.close();
+    }
+}
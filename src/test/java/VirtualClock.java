@@ -0,0 +1,23 @@
+/**
+ * {@link Clock} for simulations: sleeping advances the time instantly.
+ */
+public class VirtualClock implements Clock {
+
+    private long mNow;
+
+    public VirtualClock(long _start) {
+        mNow = _start;
+    }
+
+    public long currentTimeMillis() {
+        return mNow;
+    }
+
+    public void sleep(long _millis) {
+        advance(_millis);
+    }
+
+    public void advance(long _millis) {
+        mNow += _millis;
+    }
+}